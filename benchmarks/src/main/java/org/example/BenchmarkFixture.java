@@ -0,0 +1,85 @@
+package org.example;
+
+import org.apache.ftpserver.ftplet.FtpException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Directorio local, servidor embebido y creación de sincronizadores, compartidos por todas las pruebas.
+ */
+public class BenchmarkFixture implements Closeable {
+
+    public static final int WORKERS = 4;
+
+    private final Path work;
+    private final File local;
+    private final File remote;
+    private final EmbeddedFtpServer server;
+
+    public BenchmarkFixture(long latencyMillis) throws IOException, FtpException {
+        work = Files.createTempDirectory("ftp-bench");
+        local = Files.createDirectory(work.resolve("local")).toFile();
+        remote = Files.createDirectory(work.resolve("remote")).toFile();
+        server = new EmbeddedFtpServer(remote);
+        server.setLatency(latencyMillis);
+    }
+
+    public File getLocal() {
+        return local;
+    }
+
+    public File getRemote() {
+        return remote;
+    }
+
+    /**
+     * Sincronizador nuevo contra el servidor embebido, sin copias de seguridad.
+     */
+    public SincronizadorFTP newSync() throws IOException {
+        SincronizadorFTP sync = new SincronizadorFTP(local, "localhost", server.getPort(),
+                EmbeddedFtpServer.USER, EmbeddedFtpServer.PASSWORD, WORKERS);
+        sync.setBackupDir(null);
+        return sync;
+    }
+
+    /**
+     * Vacía el servidor y borra el índice y los metadatos locales, para que la siguiente pasada lo suba todo.
+     */
+    public void reset() throws IOException {
+        File[] children = remote.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child.toPath());
+            }
+        }
+        File[] state = local.listFiles(File::isFile);
+        if (state != null) {
+            for (File file : state) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        delete(work);
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pasada que elimina del servidor un directorio de archivos que ya no existen en local.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class DeleteBenchmark {
+
+    @Param({"500"})
+    public int files;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private BenchmarkFixture fixture;
+    private SincronizadorFTP sync;
+
+    @Setup(Level.Trial)
+    public void connect() throws Exception {
+        fixture = new BenchmarkFixture(latencyMillis);
+        SyntheticTree.flat(new File(fixture.getLocal(), "data"), 10);
+        sync = fixture.newSync();
+        sync.syncNow();
+    }
+
+    @Setup(Level.Iteration)
+    public void createStale() throws Exception {
+        SyntheticTree.flat(new File(fixture.getRemote(), "stale"), files);
+    }
+
+    @Benchmark
+    public SyncPlan deleteStale() {
+        return sync.syncNow();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        sync.stopSync();
+        fixture.close();
+    }
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servidor FTP en el mismo proceso que las pruebas de rendimiento, sobre un directorio local y en un puerto libre.
+ * Puede añadir una espera fija antes de cada orden para simular la latencia de un servidor remoto.
+ */
+public class EmbeddedFtpServer implements Closeable {
+
+    public static final String USER = "Admin";
+    public static final String PASSWORD = "Admin1.";
+    private static final int MAX_LOGINS = 200;
+
+    private final FtpServer server;
+    private final File home;
+    private final int port;
+    private volatile long latencyMillis;
+
+    public EmbeddedFtpServer(File home) throws FtpException {
+        this.home = home;
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(0);
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        ConnectionConfigFactory connections = new ConnectionConfigFactory();
+        connections.setMaxLogins(MAX_LOGINS);
+        connections.setMaxThreads(MAX_LOGINS);
+        serverFactory.setConnectionConfig(connections.createConnectionConfig());
+
+        BaseUser user = new BaseUser();
+        user.setName(USER);
+        user.setPassword(PASSWORD);
+        user.setHomeDirectory(home.getAbsolutePath());
+        List<Authority> authorities = List.of(new WritePermission(), new ConcurrentLoginPermission(MAX_LOGINS, MAX_LOGINS));
+        user.setAuthorities(authorities);
+        PropertiesUserManagerFactory userManagerFactory = new PropertiesUserManagerFactory();
+        serverFactory.setUserManager(userManagerFactory.createUserManager());
+        serverFactory.getUserManager().save(user);
+
+        // FtpServer vacía este mapa al parar, así que tiene que ser modificable
+        Map<String, Ftplet> ftplets = new HashMap<>();
+        ftplets.put("latency", new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) throws FtpException {
+                long delay = latencyMillis;
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return FtpletResult.DEFAULT;
+            }
+        });
+        serverFactory.setFtplets(ftplets);
+
+        server = serverFactory.createServer();
+        server.start();
+        port = serverFactory.getListener("default").getPort();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public File getHome() {
+        return home;
+    }
+
+    /**
+     * Espera añadida antes de responder a cada orden; 0 para ninguna.
+     */
+    public void setLatency(long millis) {
+        this.latencyMillis = millis;
+    }
+
+    @Override
+    public void close() {
+        server.stop();
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Borrado de un lote de archivos caducados, tal como lo hace el {@link ExpiryScheduler} al vencer su ventana.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class ExpiryBenchmark {
+
+    @Param({"500"})
+    public int files;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private BenchmarkFixture fixture;
+    private SincronizadorFTP sync;
+    private final List<String> expired = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void connect() throws Exception {
+        fixture = new BenchmarkFixture(latencyMillis);
+        sync = fixture.newSync();
+    }
+
+    @Setup(Level.Iteration)
+    public void createExpired() throws Exception {
+        expired.clear();
+        for (File file : SyntheticTree.flat(new File(fixture.getRemote(), "expire"), files)) {
+            expired.add("/expire/" + file.getName());
+        }
+    }
+
+    @Benchmark
+    public void expire() {
+        sync.expireFiles(expired);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        sync.stopSync();
+        fixture.close();
+    }
+}
@@ -0,0 +1,66 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primera sincronización de un árbol completo contra un servidor vacío. Cada iteración es una sola pasada,
+ * con el servidor y el estado local vaciados antes de empezar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class FullSyncBenchmark {
+
+    @Param({"SMALL_FILES", "HUGE_FILES", "DEEP_NESTING"})
+    public SyntheticTree.Shape shape;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private BenchmarkFixture fixture;
+    private SincronizadorFTP sync;
+
+    @Setup(Level.Trial)
+    public void createTree() throws Exception {
+        fixture = new BenchmarkFixture(latencyMillis);
+        SyntheticTree.generate(fixture.getLocal(), shape);
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyServer() throws Exception {
+        fixture.reset();
+        sync = fixture.newSync();
+    }
+
+    @Benchmark
+    public SyncPlan fullSync() {
+        return sync.syncNow();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopSync() {
+        sync.stopSync();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws Exception {
+        fixture.close();
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pasada periódica sin cambios sobre un árbol ya sincronizado: listado remoto, recorrido local y comparación.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class NoChangeTickBenchmark {
+
+    @Param({"SMALL_FILES", "HUGE_FILES", "DEEP_NESTING"})
+    public SyntheticTree.Shape shape;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private BenchmarkFixture fixture;
+    private SincronizadorFTP sync;
+
+    @Setup(Level.Trial)
+    public void syncTree() throws Exception {
+        fixture = new BenchmarkFixture(latencyMillis);
+        SyntheticTree.generate(fixture.getLocal(), shape);
+        sync = fixture.newSync();
+        sync.syncNow();
+    }
+
+    @Benchmark
+    public SyncPlan noChangeTick() {
+        return sync.syncNow();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws Exception {
+        sync.stopSync();
+        fixture.close();
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Árboles de prueba deterministas: con la misma forma y semilla se generan siempre los mismos archivos y bytes,
+ * así que los resultados de distintos commits son comparables. Todo se crea bajo {@code data/} para no mezclarse
+ * con el estado que el sincronizador guarda en la raíz.
+ */
+public final class SyntheticTree {
+
+    public enum Shape {
+        /** 500 archivos de 1 a 8 KB repartidos en 10 directorios */
+        SMALL_FILES,
+        /** 3 archivos de 32 MB */
+        HUGE_FILES,
+        /** 4 ramas de 12 niveles con 5 archivos de 2 KB por nivel */
+        DEEP_NESTING
+    }
+
+    public static final long SEED = 20240601L;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private SyntheticTree() {
+    }
+
+    /**
+     * @return Los archivos creados
+     */
+    public static List<File> generate(File root, Shape shape) throws IOException {
+        Random random = new Random(SEED);
+        File data = new File(root, "data");
+        List<File> files = new ArrayList<>();
+        switch (shape) {
+            case SMALL_FILES:
+                for (int d = 0; d < 10; d++) {
+                    for (int f = 0; f < 50; f++) {
+                        files.add(write(new File(data, "dir" + d + "/file" + f + ".bin"), 1024 + random.nextInt(7 * 1024), random));
+                    }
+                }
+                break;
+            case HUGE_FILES:
+                for (int f = 0; f < 3; f++) {
+                    files.add(write(new File(data, "huge" + f + ".bin"), 32L * 1024 * 1024, random));
+                }
+                break;
+            case DEEP_NESTING:
+                for (int branch = 0; branch < 4; branch++) {
+                    File dir = new File(data, "branch" + branch);
+                    for (int level = 0; level < 12; level++) {
+                        dir = new File(dir, "level" + level);
+                        for (int f = 0; f < 5; f++) {
+                            files.add(write(new File(dir, "file" + f + ".bin"), 2048, random));
+                        }
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+        return files;
+    }
+
+    /**
+     * Crea {@code count} archivos de 1 KB en {@code dir}.
+     */
+    public static List<File> flat(File dir, int count) throws IOException {
+        Random random = new Random(SEED);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(write(new File(dir, "file" + i + ".bin"), 1024, random));
+        }
+        return files;
+    }
+
+    private static File write(File file, long size, Random random) throws IOException {
+        file.getParentFile().mkdirs();
+        byte[] block = new byte[BLOCK_SIZE];
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,179 @@
+package org.example;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Planificador de pasadas con intervalo adaptable. Cada pasada se programa al terminar la anterior, así que
+ * nunca se solapan ni se acumulan. Si una pasada encuentra cambios, el intervalo se reduce a la mitad; si no,
+ * crece un 50 %, siempre entre {@code minMillis} y {@code maxMillis} y nunca por debajo de lo que tardó la
+ * última pasada. Una excepción en una pasada se registra y no detiene la planificación.
+ * <p>
+ * Puede tener su propio hilo o compartir un {@link ScheduledExecutorService} con otros planificadores; en ese
+ * caso sus tareas siguen ejecutándose de una en una, aunque no siempre en el mismo hilo.
+ */
+public class AdaptiveScheduler implements Closeable {
+
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final BooleanSupplier pass;
+    private final long minMillis;
+    private final long maxMillis;
+    // Tareas pendientes de este planificador; sólo hay un drain() activo a la vez
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // Las peticiones que llegan mientras otra espera turno se funden en una sola pasada
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private long interval;
+    private volatile ScheduledFuture<?> next;
+    private volatile long lastDuration;
+    private volatile boolean closed;
+
+    /**
+     * @param pass Pasada de sincronización; devuelve true si ha encontrado cambios
+     */
+    public AdaptiveScheduler(String name, BooleanSupplier pass, long minMillis, long maxMillis) {
+        this(Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, name)), true, pass, minMillis, maxMillis);
+    }
+
+    /**
+     * Planificador sobre un ejecutor compartido, que no se cierra con {@link #close()}.
+     */
+    public AdaptiveScheduler(ScheduledExecutorService shared, BooleanSupplier pass, long minMillis, long maxMillis) {
+        this(shared, false, pass, minMillis, maxMillis);
+    }
+
+    private AdaptiveScheduler(ScheduledExecutorService executor, boolean ownsExecutor, BooleanSupplier pass,
+                              long minMillis, long maxMillis) {
+        if (minMillis <= 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid interval bounds " + minMillis + "-" + maxMillis);
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.pass = pass;
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.interval = minMillis;
+    }
+
+    public void start(long initialDelayMillis) {
+        scheduleTick(initialDelayMillis);
+    }
+
+    /**
+     * Adelanta la siguiente pasada. Si ya hay una pedida y sin empezar, no se añade otra.
+     */
+    public void requestPass() {
+        if (requested.compareAndSet(false, true)) {
+            submit(this::tick);
+        }
+    }
+
+    /**
+     * Ejecuta otra tarea en turno con las pasadas, para que no se solape con ellas.
+     */
+    public void execute(Runnable task) {
+        submit(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Logger.logError("Scheduled task failed (" + e + ")");
+            }
+        });
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * No espera a la pasada en curso: se puede llamar desde la propia pasada.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> pending = next;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        tasks.clear();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void submit(Runnable task) {
+        if (closed) {
+            return;
+        }
+        tasks.add(task);
+        startDrain();
+    }
+
+    private void startDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Ejecutor cerrado: no queda nada que hacer
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while (!closed && (task = tasks.poll()) != null) {
+            task.run();
+        }
+        draining.set(false);
+        // Una tarea puede haber llegado justo después del último poll()
+        if (!closed && !tasks.isEmpty()) {
+            startDrain();
+        }
+    }
+
+    private void scheduleTick(long delayMillis) {
+        if (closed) {
+            return;
+        }
+        try {
+            next = executor.schedule(() -> submit(this::tick), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void tick() {
+        requested.set(false);
+        ScheduledFuture<?> pending = next;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        long start = System.currentTimeMillis();
+        boolean changed = false;
+        try {
+            changed = pass.getAsBoolean();
+        } catch (RuntimeException e) {
+            Logger.logError("Sync pass failed (" + e + ")");
+        }
+        long duration = System.currentTimeMillis() - start;
+        lastDuration = duration;
+
+        interval = changed ? Math.max(minMillis, interval / 2) : Math.min(maxMillis, interval + interval / 2);
+        // Al menos tanto tiempo libre como el que ocupa la pasada
+        interval = Math.min(maxMillis, Math.max(interval, duration));
+        scheduleTick(interval);
+    }
+}
@@ -0,0 +1,293 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copias de seguridad en segundo plano, direccionadas por contenido.
+ * Cada contenido distinto se guarda una sola vez en {@code objects/xx/<sha256>} y la última versión de cada
+ * ruta se expone en {@code files/<ruta>} como enlace duro al objeto (o copia, si el sistema de archivos no
+ * admite enlaces). La cola es acotada: si está llena, la copia se omite y se anota, pero la subida sigue.
+ * <p>
+ * La cola la vacía un hilo propio o, con un ejecutor compartido, una tarea que se lanza al encolar y termina
+ * cuando no queda nada.
+ */
+public class BackupStore implements Closeable {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private static final class Task {
+        final File file;
+        final String path;
+
+        Task(File file, String path) {
+            this.file = file;
+            this.path = path;
+        }
+    }
+
+    private final Path objectsDir;
+    private final Path filesDir;
+    private final BlockingQueue<Task> queue;
+    // Rutas ya encoladas: varios cambios seguidos del mismo archivo generan una sola copia
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final ContentHasher hasher = new ContentHasher("SHA-256", 1);
+    private final AtomicLong skipped = new AtomicLong();
+    // Uno de los dos: el hilo propio o el ejecutor compartido
+    private final Thread worker;
+    private final Executor executor;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final SyncMetrics metrics;
+    private volatile boolean closed;
+    // Sólo se desactiva si el sistema de archivos no admite enlaces; lo escribe el hilo que vacía la cola
+    private volatile boolean linksSupported = true;
+
+    /**
+     * @param root          Directorio raíz de las copias
+     * @param queueCapacity Número máximo de copias pendientes
+     */
+    public BackupStore(File root, int queueCapacity) {
+        this(root, queueCapacity, null);
+    }
+
+    /**
+     * @param metrics Donde se anota lo que tarda cada copia, o null
+     */
+    public BackupStore(File root, int queueCapacity, SyncMetrics metrics) {
+        this(root, queueCapacity, metrics, null);
+    }
+
+    /**
+     * @param executor Ejecutor compartido donde se vacía la cola, o null para usar un hilo propio
+     */
+    public BackupStore(File root, int queueCapacity, SyncMetrics metrics, Executor executor) {
+        this.metrics = metrics;
+        this.objectsDir = root.toPath().resolve("objects");
+        this.filesDir = root.toPath().resolve("files");
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = executor;
+        if (executor == null) {
+            this.worker = new Thread(this::run, "backup-writer");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            this.worker = null;
+        }
+    }
+
+    /**
+     * Encola la copia del archivo sin esperar.
+     *
+     * @param path Ruta relativa con la que se expone la copia (la misma que en el servidor)
+     */
+    public void submit(File file, String path) {
+        if (closed || !queued.add(path)) {
+            return;
+        }
+        if (!queue.offer(new Task(file, path))) {
+            queued.remove(path);
+            skipped.incrementAndGet();
+            if (metrics != null) {
+                metrics.error(SyncMetrics.Phase.BACKUP);
+            }
+            Logger.logError("Backup queue full, skipping " + path);
+        } else if (executor != null && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Deja de aceptar copias y espera un tiempo limitado a que se vacíe la cola.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean finished;
+        try {
+            if (worker != null) {
+                worker.join(CLOSE_TIMEOUT_MILLIS);
+                finished = !worker.isAlive();
+            } else {
+                finished = awaitDrained(CLOSE_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finished = false;
+        }
+        if (!finished) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+            Logger.logError(queue.size() + " backups pending at shutdown");
+        }
+        hasher.shutdown();
+    }
+
+    private synchronized boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (draining.get() || !queue.isEmpty()) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return false;
+            }
+            wait(Math.min(wait, 200));
+        }
+        return true;
+    }
+
+    /**
+     * Tarea del ejecutor compartido: copia hasta vaciar la cola.
+     */
+    private void drain() {
+        do {
+            Task task;
+            while ((task = queue.poll()) != null) {
+                process(task);
+            }
+            draining.set(false);
+            synchronized (this) {
+                notifyAll();
+            }
+            // Lo encolado justo antes de soltar el turno no ha lanzado otra tarea
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void run() {
+        while (!closed || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task != null) {
+                process(task);
+            }
+        }
+    }
+
+    private void process(Task task) {
+        queued.remove(task.path);
+        long start = System.nanoTime();
+        try {
+            store(task.file, task.path);
+            if (metrics != null) {
+                metrics.record(SyncMetrics.Phase.BACKUP, start);
+            }
+        } catch (IOException e) {
+            if (metrics != null) {
+                metrics.error(SyncMetrics.Phase.BACKUP);
+            }
+            Logger.logError("Unable to back up " + task.path + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private void store(File file, String path) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String hex = ContentHasher.toHex(hasher.hash(file));
+        Path object = objectsDir.resolve(hex.substring(0, 2)).resolve(hex);
+
+        if (!Files.exists(object)) {
+            Files.createDirectories(object.getParent());
+            Path tmp = object.resolveSibling(hex + ".tmp");
+            copy(file.toPath(), tmp);
+            if (file.length() != size || file.lastModified() != lastModified) {
+                // El archivo cambió mientras se copiaba: el objeto no correspondería a su hash
+                Files.deleteIfExists(tmp);
+                submit(file, path);
+                return;
+            }
+            try {
+                Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, object, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        Path view = filesDir.resolve(path.startsWith("/") ? path.substring(1) : path);
+        Files.createDirectories(view.getParent());
+        Files.deleteIfExists(view);
+        if (linksSupported) {
+            try {
+                Files.createLink(view, object);
+                return;
+            } catch (UnsupportedOperationException e) {
+                disableLinks(e.getMessage());
+            } catch (IOException e) {
+                if (linksUnsupported(e)) {
+                    disableLinks(e.getMessage());
+                } else {
+                    // Un fallo de este enlace (demasiados enlaces al objeto, permisos...): sólo éste se copia
+                    Logger.logError("Unable to link backup of " + path + ", copying instead (" + e.getMessage() + ")");
+                }
+            }
+        }
+        copy(object, view);
+    }
+
+    private void disableLinks(String reason) {
+        linksSupported = false;
+        Logger.logMessage("Hard links not available in backup directory, copying instead (" + reason + ")");
+    }
+
+    /**
+     * Indica si el error al crear un enlace es del sistema de archivos (no admite enlaces, u objetos y vistas
+     * quedan en dispositivos distintos) y se repetiría con cualquier otro archivo.
+     */
+    static boolean linksUnsupported(IOException e) {
+        if (!(e instanceof FileSystemException)) {
+            return false;
+        }
+        String reason = ((FileSystemException) e).getReason();
+        if (reason == null) {
+            return false;
+        }
+        reason = reason.toLowerCase(Locale.ROOT);
+        return reason.contains("cross-device") || reason.contains("not supported");
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.example;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Limita la velocidad de subida del proceso con un {@link TokenBucket} global y otro opcional por servidor.
+ * Cada flujo de subida se envuelve con {@link #throttle}; mientras haya subidas de una prioridad mayor en
+ * curso, las de menor prioridad esperan {@value #YIELD_FACTOR} veces lo que les corresponde por byte, así que
+ * dejan casi todas las fichas a las primeras sin llegar a pararse.
+ * <p>
+ * El limitador por defecto se configura con {@code bandwidth.limit} y {@code bandwidth.server.<host>:<puerto>},
+ * en el formato de {@link RateSchedule}.
+ * <p>
+ * El límite y las prioridades son por proceso (por JVM). Si la interfaz y el demonio corren a la vez contra el
+ * mismo servidor, cada uno gasta su propio límite y la prioridad de uno no hace ceder al otro; para repartir
+ * un único límite hay que configurar en cada proceso la parte que le corresponde.
+ */
+public class BandwidthLimiter {
+
+    private static final int YIELD_FACTOR = 4;
+    private static final String SERVER_PREFIX = "bandwidth.server.";
+    private static final BandwidthLimiter DEFAULT = fromSystemProperties();
+
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> servers = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray active = new AtomicIntegerArray(TransferPriority.values().length);
+
+    public BandwidthLimiter(RateSchedule globalLimit) {
+        this.global = new TokenBucket(globalLimit);
+    }
+
+    /**
+     * Limitador compartido por todas las raíces y sesiones del proceso.
+     */
+    public static BandwidthLimiter getDefault() {
+        return DEFAULT;
+    }
+
+    public void setGlobalLimit(RateSchedule limit) {
+        global.setSchedule(limit);
+    }
+
+    public void setServerLimit(String server, int port, RateSchedule limit) {
+        servers.computeIfAbsent(server + ":" + port, k -> new TokenBucket(limit)).setSchedule(limit);
+    }
+
+    /**
+     * Envuelve un flujo de subida; hay que cerrarlo al terminar para que deje de contar como activo.
+     */
+    public InputStream throttle(InputStream in, String server, int port, TransferPriority priority) {
+        return new ThrottledInputStream(in, servers.get(server + ":" + port), priority);
+    }
+
+    private boolean higherPriorityActive(TransferPriority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (active.get(i) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BandwidthLimiter fromSystemProperties() {
+        BandwidthLimiter limiter = new BandwidthLimiter(RateSchedule.UNLIMITED);
+        try {
+            limiter.setGlobalLimit(RateSchedule.parse(System.getProperty("bandwidth.limit")));
+            for (String key : System.getProperties().stringPropertyNames()) {
+                if (key.startsWith(SERVER_PREFIX)) {
+                    String address = key.substring(SERVER_PREFIX.length());
+                    int colon = address.lastIndexOf(':');
+                    if (colon > 0) {
+                        limiter.setServerLimit(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)),
+                                RateSchedule.parse(System.getProperty(key)));
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Logger.logError("Invalid bandwidth configuration (" + e.getMessage() + "), uploads not limited");
+            limiter = new BandwidthLimiter(RateSchedule.UNLIMITED);
+        }
+        return limiter;
+    }
+
+    private class ThrottledInputStream extends FilterInputStream {
+        private final TokenBucket server;
+        private final TransferPriority priority;
+        private boolean closed;
+
+        ThrottledInputStream(InputStream in, TokenBucket server, TransferPriority priority) {
+            super(in);
+            this.server = server;
+            this.priority = priority;
+            active.incrementAndGet(priority.ordinal());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                pace(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = in.read(buffer, off, len);
+            if (n > 0) {
+                pace(n);
+            }
+            return n;
+        }
+
+        private void pace(int bytes) throws InterruptedIOException {
+            boolean yield = higherPriorityActive(priority);
+            long waitNanos = wait(global, bytes, yield);
+            if (server != null) {
+                waitNanos = Math.max(waitNanos, wait(server, bytes, yield));
+            }
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Upload interrupted while throttled");
+                }
+            }
+        }
+
+        /**
+         * Al ceder no se gastan más fichas, sólo se espera más: así no se deja al cubo en deuda con las
+         * subidas prioritarias.
+         */
+        private long wait(TokenBucket bucket, int bytes, boolean yield) {
+            long waitNanos = bucket.reserve(bytes);
+            long rate = bucket.getRate();
+            if (yield && rate > 0) {
+                waitNanos += (YIELD_FACTOR - 1) * bytes * 1_000_000_000L / rate;
+            }
+            return waitNanos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                active.decrementAndGet(priority.ordinal());
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Borrado masivo en el servidor. Acepta rutas absolutas y patrones con '*' y '?' en cualquier tramo, y
+ * elimina los directorios con todo su contenido de abajo arriba, repartiendo el trabajo entre las sesiones
+ * del pool. Cada tarea toma una sesión sólo para listar un directorio o para borrar un lote de archivos, así
+ * que ninguna espera con una sesión ocupada a que terminen sus hijos; y nunca espera más de
+ * {@value #BORROW_TIMEOUT_MILLIS} ms a que quede una libre, para no ocupar indefinidamente un hilo del ejecutor
+ * que comparte con las subidas.
+ * <p>
+ * No toca los metadatos: el llamador aplica de una vez lo que devuelven los {@link Result}.
+ */
+public class BulkDelete {
+
+    private static final int FILE_BATCH = 200;
+    private static final long BORROW_TIMEOUT_MILLIS = 60_000;
+
+    public enum Status {
+        /** Se borró todo */
+        DELETED,
+        /** La ruta o el patrón no existe en el servidor */
+        NOT_FOUND,
+        /** Se borró una parte; el resto queda en {@link Result#getFailures()} */
+        PARTIAL,
+        FAILED
+    }
+
+    /**
+     * Resultado de una ruta encontrada, o de un patrón sin coincidencias.
+     */
+    public static class Result {
+        private final String path;
+        private final List<String> deletedFiles;
+        private final List<String> deletedDirs;
+        private final List<String> failures;
+
+        Result(String path, List<String> deletedFiles, List<String> deletedDirs, List<String> failures) {
+            this.path = path;
+            this.deletedFiles = deletedFiles;
+            this.deletedDirs = deletedDirs;
+            this.failures = failures;
+        }
+
+        static Result notFound(String path) {
+            return new Result(path, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        }
+
+        static Result rejected(String path, String reason) {
+            return new Result(path, Collections.emptyList(), Collections.emptyList(),
+                    Collections.singletonList(path + ": " + reason));
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Status getStatus() {
+            boolean deleted = !deletedFiles.isEmpty() || !deletedDirs.isEmpty();
+            if (failures.isEmpty()) {
+                return deleted ? Status.DELETED : Status.NOT_FOUND;
+            }
+            return deleted ? Status.PARTIAL : Status.FAILED;
+        }
+
+        public List<String> getDeletedFiles() {
+            return deletedFiles;
+        }
+
+        /**
+         * Directorios borrados, con '/' final, del más profundo al más alto.
+         */
+        public List<String> getDeletedDirs() {
+            return deletedDirs;
+        }
+
+        /**
+         * Una línea "ruta: motivo" por cada elemento que no se pudo borrar.
+         */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            String text = path + " " + getStatus() + " (" + deletedFiles.size() + " files, " + deletedDirs.size() + " directories";
+            return failures.isEmpty() ? text + ")" : text + ", first failure " + failures.get(0) + ")";
+        }
+    }
+
+    /**
+     * Lo acumulado al borrar un subárbol; lo rellenan varias tareas a la vez.
+     */
+    private static class Progress {
+        final Queue<String> files = new ConcurrentLinkedQueue<>();
+        final Queue<String> dirs = new ConcurrentLinkedQueue<>();
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    }
+
+    private static class Listing {
+        final List<String> files = new ArrayList<>();
+        final List<String> dirs = new ArrayList<>();
+    }
+
+    private final FTPConnectionPool pool;
+    private final Executor executor;
+
+    /**
+     * @param executor Donde se listan y borran los directorios; no se cierra al terminar
+     */
+    public BulkDelete(FTPConnectionPool pool, Executor executor) {
+        this.pool = pool;
+        this.executor = executor;
+    }
+
+    public static boolean isPattern(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0;
+    }
+
+    /**
+     * Una ruta sólo se acepta si baja al menos un nivel desde la raíz y no tiene tramos "." ni "..": así
+     * ni un campo vacío ni "/.." pueden acabar borrando la raíz o algo fuera de ella.
+     */
+    public static boolean isSafe(String path) {
+        List<String> segments = segments(path);
+        return !segments.isEmpty() && !segments.contains(".") && !segments.contains("..");
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Busca en el servidor lo que corresponde a cada ruta o patrón, listando cada directorio una sola vez.
+     * Las rutas que no pasan {@link #isSafe(String)} no encuentran nada.
+     *
+     * @return Para cada patrón, en el orden recibido, las rutas encontradas; los directorios llevan '/' final
+     * @throws IOException Si falla la conexión
+     */
+    public List<List<String>> resolve(List<String> patterns) throws IOException {
+        List<List<String>> matches = new ArrayList<>();
+        Map<String, Listing> listings = new HashMap<>();
+        FTPClient client = pool.borrow();
+        try {
+            for (String pattern : patterns) {
+                List<String> found = new ArrayList<>();
+                if (isSafe(pattern)) {
+                    resolve(client, "/", segments(pattern), 0, listings, found);
+                }
+                matches.add(found);
+            }
+        } catch (IOException e) {
+            pool.invalidate(client);
+            throw e;
+        }
+        pool.release(client);
+        return matches;
+    }
+
+    private void resolve(FTPClient client, String dir, List<String> segments, int index, Map<String, Listing> listings,
+                         List<String> found) throws IOException {
+        Listing listing = listings.get(dir);
+        if (listing == null) {
+            listing = list(client, dir);
+            listings.put(dir, listing);
+        }
+        String segment = segments.get(index);
+        Pattern glob = isPattern(segment) ? globToRegex(segment) : null;
+        boolean last = index == segments.size() - 1;
+        for (String subdir : listing.dirs) {
+            String name = subdir.substring(dir.length(), subdir.length() - 1);
+            if (glob != null ? glob.matcher(name).matches() : name.equals(segment)) {
+                if (last) {
+                    found.add(subdir);
+                } else {
+                    resolve(client, subdir, segments, index + 1, listings, found);
+                }
+            }
+        }
+        if (last) {
+            for (String file : listing.files) {
+                String name = file.substring(dir.length());
+                if (glob != null ? glob.matcher(name).matches() : name.equals(segment)) {
+                    found.add(file);
+                }
+            }
+        }
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Borra un archivo, o un directorio con todo su contenido, en segundo plano.
+     *
+     * @param path Ruta devuelta por {@link #resolve(List)}
+     */
+    public CompletableFuture<Result> remove(String path) {
+        Progress progress = new Progress();
+        CompletableFuture<Void> done = path.endsWith("/")
+                ? removeTree(path, progress)
+                : CompletableFuture.runAsync(() -> deleteFiles(Collections.singletonList(path), progress), executor);
+        return done.thenApply(ignored -> new Result(path, new ArrayList<>(progress.files),
+                new ArrayList<>(progress.dirs), new ArrayList<>(progress.failures)));
+    }
+
+    /**
+     * Lista el directorio, lanza a la vez los lotes de archivos y los subdirectorios, y cuando han terminado
+     * todos borra el propio directorio. Si no se pudo listar, no se intenta.
+     */
+    private CompletableFuture<Void> removeTree(String dir, Progress progress) {
+        return CompletableFuture.supplyAsync(() -> listQuietly(dir, progress), executor)
+                .thenCompose(listing -> {
+                    if (listing == null) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    List<CompletableFuture<Void>> children = new ArrayList<>();
+                    for (int i = 0; i < listing.files.size(); i += FILE_BATCH) {
+                        List<String> batch = listing.files.subList(i, Math.min(i + FILE_BATCH, listing.files.size()));
+                        children.add(CompletableFuture.runAsync(() -> deleteFiles(batch, progress), executor));
+                    }
+                    for (String subdir : listing.dirs) {
+                        children.add(removeTree(subdir, progress));
+                    }
+                    return CompletableFuture.allOf(children.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> true);
+                })
+                .thenAcceptAsync(listed -> {
+                    if (listed) {
+                        removeDirectory(dir, progress);
+                    }
+                }, executor);
+    }
+
+    private Listing listQuietly(String dir, Progress progress) {
+        FTPClient client = null;
+        try {
+            client = pool.borrow(BORROW_TIMEOUT_MILLIS);
+            Listing listing = list(client, dir);
+            pool.release(client);
+            return listing;
+        } catch (IOException e) {
+            if (client != null) {
+                pool.invalidate(client);
+            }
+            progress.failures.add(dir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sólo guarda las rutas: las entradas llegan una a una por {@link RemoteSnapshot#list}, sin pasar por la
+     * lista de {@link FTPFile} del directorio entero.
+     */
+    private static Listing list(FTPClient client, String dir) throws IOException {
+        Listing listing = new Listing();
+        RemoteSnapshot.list(client, dir, client.hasFeature("MLST"), ftpFile -> {
+            if (ftpFile == null || ftpFile.getName().equals(".") || ftpFile.getName().equals("..")) {
+                return;
+            }
+            if (ftpFile.isDirectory()) {
+                listing.dirs.add(dir + ftpFile.getName() + "/");
+            } else {
+                listing.files.add(dir + ftpFile.getName());
+            }
+        });
+        return listing;
+    }
+
+    /**
+     * Borra un lote con una sola sesión. Si se cae la conexión, el resto del lote se da por fallido.
+     */
+    private void deleteFiles(List<String> paths, Progress progress) {
+        FTPClient client = null;
+        int done = 0;
+        try {
+            client = pool.borrow(BORROW_TIMEOUT_MILLIS);
+            for (String path : paths) {
+                if (client.deleteFile(path)) {
+                    progress.files.add(path);
+                } else {
+                    progress.failures.add(path + ": " + client.getReplyString().trim());
+                }
+                done++;
+            }
+            pool.release(client);
+        } catch (IOException e) {
+            if (client != null) {
+                pool.invalidate(client);
+            }
+            for (String path : paths.subList(done, paths.size())) {
+                progress.failures.add(path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void removeDirectory(String dir, Progress progress) {
+        FTPClient client = null;
+        try {
+            client = pool.borrow(BORROW_TIMEOUT_MILLIS);
+            if (client.removeDirectory(dir)) {
+                progress.dirs.add(dir);
+            } else {
+                progress.failures.add(dir + ": " + client.getReplyString().trim());
+            }
+            pool.release(client);
+        } catch (IOException e) {
+            if (client != null) {
+                pool.invalidate(client);
+            }
+            progress.failures.add(dir + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Cupo de sesiones de transferencia abiertas a la vez contra un mismo servidor, repartido entre todos los
+ * {@link FTPConnectionPool} que lo usan. Cuando alguien se queda sin cupo, las sesiones ociosas de los demás
+ * pools se cierran para devolverlo; así nadie espera por una sesión que otro tiene guardada sin usar.
+ */
+public class ConnectionBudget {
+
+    private final Semaphore permits;
+    private final Set<FTPConnectionPool> pools = ConcurrentHashMap.newKeySet();
+
+    public ConnectionBudget(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Connection budget must be at least 1");
+        }
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    void register(FTPConnectionPool pool) {
+        pools.add(pool);
+    }
+
+    void unregister(FTPConnectionPool pool) {
+        pools.remove(pool);
+    }
+
+    boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    /**
+     * Cierra las sesiones ociosas del resto de pools para que {@code requester} pueda abrir la suya.
+     */
+    void reclaimIdle(FTPConnectionPool requester) {
+        for (FTPConnectionPool pool : pools) {
+            if (pool != requester) {
+                pool.closeIdle();
+            }
+        }
+    }
+
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,258 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Vigila la sesión principal (la de los listados y borrados). Si deja de responder, la sustituye por una nueva
+ * con reintentos en espera exponencial con jitter; {@link FTPConnectionPool#connect()} ya inicia sesión y activa
+ * el modo binario. Durante los periodos sin actividad envía NOOP para que el servidor no la cierre.
+ * <p>
+ * En modo compartido (demonio) no hay reintentos con espera: las pasadas de todas las raíces corren en los
+ * mismos hilos, y un servidor caído no puede quedarse con uno de ellos.
+ */
+public class ConnectionSupervisor implements Closeable {
+
+    /**
+     * Preparación de cada sesión nueva, para lo que el servidor sólo recuerda por sesión (p. ej. OPTS HASH).
+     */
+    public interface SessionSetup {
+        void apply(FTPClient client) throws IOException;
+    }
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private final FTPConnectionPool pool;
+    private final boolean shared;
+    private final Object lock = new Object();
+    private volatile FTPClient client;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile boolean closed;
+    private volatile boolean suspended;
+    private volatile SessionSetup setup;
+    private ScheduledExecutorService keepAliveTimer;
+
+    public ConnectionSupervisor(FTPConnectionPool pool) throws IOException {
+        this(pool, false);
+    }
+
+    /**
+     * @param shared true si las pasadas corren en hilos compartidos con otras raíces: no se conecta hasta la
+     *               primera pasada, y {@link #ensureConnected()} y {@link #reconnect()} hacen un solo intento;
+     *               si falla, la raíz lo vuelve a intentar en su siguiente pasada
+     * @throws IOException Si no es compartido y no se puede conectar
+     */
+    public ConnectionSupervisor(FTPConnectionPool pool, boolean shared) throws IOException {
+        this.pool = pool;
+        this.shared = shared;
+        if (shared) {
+            client = new FTPClient();
+            suspended = true;
+        } else {
+            client = open();
+        }
+    }
+
+    public FTPClient client() {
+        return client;
+    }
+
+    /**
+     * Se aplica a cada sesión que se abra a partir de ahora; la actual la prepara quien llama.
+     *
+     * @param setup null para no preparar nada
+     */
+    public void setSessionSetup(SessionSetup setup) {
+        this.setup = setup;
+    }
+
+    private FTPClient open() throws IOException {
+        FTPClient opened = pool.connect();
+        SessionSetup current = setup;
+        if (current != null) {
+            try {
+                current.apply(opened);
+            } catch (IOException e) {
+                disconnectQuietly(opened);
+                throw e;
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Anota que la sesión se acaba de usar, para no enviar NOOP innecesarios.
+     */
+    public void markActive() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * @return true si la sesión responde a NOOP
+     */
+    public boolean isAlive() {
+        try {
+            if (client.isConnected() && client.sendNoOp()) {
+                markActive();
+                return true;
+            }
+        } catch (IOException e) {
+            Logger.logError("Connection check failed (" + e.getMessage() + ")");
+        }
+        return false;
+    }
+
+    /**
+     * Comprueba la sesión y, si no responde, la reconecta. Bloquea hasta conseguirlo o hasta que se cierre,
+     * salvo en modo compartido.
+     *
+     * @return false si se cerró el supervisor antes de reconectar, o si falló el intento en modo compartido
+     */
+    public boolean ensureConnected() {
+        if (suspended) {
+            try {
+                client = open();
+                suspended = false;
+                markActive();
+                return true;
+            } catch (IOException e) {
+                Logger.logError("Unable to connect (" + e.getMessage() + ")");
+                return !shared && reconnect();
+            }
+        }
+        return isAlive() || reconnect();
+    }
+
+    /**
+     * Como {@link #ensureConnected()}, pero con un único intento de conexión: para destinos que no deben hacer
+     * esperar a los demás.
+     *
+     * @return true si la sesión está lista
+     */
+    public boolean tryConnect() {
+        if (!suspended && isAlive()) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            client.disconnect();
+        } catch (IOException ignored) {
+        }
+        try {
+            client = open();
+            suspended = false;
+            markActive();
+            return true;
+        } catch (IOException e) {
+            Logger.logError("Unable to connect (" + e.getMessage() + ")");
+            return false;
+        }
+    }
+
+    /**
+     * Cierra la sesión hasta el siguiente {@link #ensureConnected()}. Lo usa el modo demonio para que las raíces
+     * que esperan su próxima pasada no mantengan conexiones abiertas.
+     */
+    public void suspend() {
+        suspended = true;
+        disconnectQuietly(client);
+    }
+
+    /**
+     * Sustituye la sesión por una nueva. Entre intentos espera un tiempo que se duplica hasta un minuto,
+     * elegido al azar entre la mitad y el total para que varios clientes no reconecten a la vez.
+     * En modo compartido sólo hay un intento.
+     *
+     * @return false si se cerró el supervisor antes de reconectar, o si falló el intento en modo compartido
+     */
+    public boolean reconnect() {
+        // Sin QUIT: si la conexión está rota sólo serviría para esperar al timeout
+        try {
+            client.disconnect();
+        } catch (IOException ignored) {
+        }
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; !closed; attempt++) {
+            try {
+                client = open();
+                suspended = false;
+                markActive();
+                Logger.logMessage("Reconnected after " + attempt + " attempt(s)");
+                return true;
+            } catch (IOException e) {
+                if (shared) {
+                    Logger.logError("Reconnect failed (" + e.getMessage() + "), retrying on the next pass");
+                    return false;
+                }
+                long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                Logger.logError("Reconnect attempt " + attempt + " failed (" + e.getMessage() + "), retrying in " + delay + " ms");
+                synchronized (lock) {
+                    try {
+                        lock.wait(delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cada {@code intervalMillis} comprueba si la sesión lleva ese tiempo sin usarse y, en ese caso, envía NOOP.
+     *
+     * @param runner Dónde se ejecuta la comprobación; debe ser el hilo que usa la sesión, porque
+     *               {@link FTPClient} no admite varios hilos a la vez
+     */
+    public void startKeepAlive(long intervalMillis, Consumer<Runnable> runner) {
+        keepAliveTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ftp-keepalive");
+            t.setDaemon(true);
+            return t;
+        });
+        keepAliveTimer.scheduleWithFixedDelay(() -> runner.accept(() -> {
+            if (!closed && System.currentTimeMillis() - lastActivity >= intervalMillis) {
+                ensureConnected();
+            }
+        }), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        if (keepAliveTimer != null) {
+            keepAliveTimer.shutdownNow();
+        }
+        disconnectQuietly(client);
+    }
+
+    private static void disconnectQuietly(FTPClient client) {
+        try {
+            if (client.isConnected()) {
+                client.logout();
+            }
+        } catch (IOException ignored) {
+        }
+        try {
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.example;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Cálculo de hashes de contenido en un {@link ForkJoinPool} propio o en un ejecutor compartido.
+ * Los archivos pequeños se leen en bloques con un buffer directo y los grandes con ventanas mapeadas en memoria.
+ * Cada resultado se guarda junto con el tamaño y la fecha del archivo, así que sólo se vuelve a leer si cambia;
+ * la caché conserva los {@code hasher.cacheEntries} archivos usados más recientemente (10000 por defecto).
+ * Lo que se sube de una pieza se puede hashear mientras se envía con {@link #hashing(InputStream)}.
+ */
+public class ContentHasher {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long MAP_THRESHOLD = 64L * 1024 * 1024;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final int CACHE_ENTRIES = Integer.getInteger("hasher.cacheEntries", 10_000);
+
+    private static class Cached {
+        final long size;
+        final long lastModified;
+        final byte[] hash;
+
+        Cached(long size, long lastModified, byte[] hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final String algorithm;
+    private final ExecutorService pool;
+    private final boolean ownsPool;
+    private final Map<String, Cached> cache = Collections.synchronizedMap(new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    });
+
+    /**
+     * @param algorithm Nombre de {@link MessageDigest} (SHA-256, SHA-1, MD5) o "CRC32"
+     */
+    public ContentHasher(String algorithm, int parallelism) {
+        this(algorithm, new ForkJoinPool(parallelism), true);
+    }
+
+    /**
+     * Hasher sobre un ejecutor compartido, que no se cierra con {@link #shutdown()}.
+     */
+    public ContentHasher(String algorithm, ExecutorService shared) {
+        this(algorithm, shared, false);
+    }
+
+    private ContentHasher(String algorithm, ExecutorService pool, boolean ownsPool) {
+        this.algorithm = algorithm;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        if (!algorithm.equals("CRC32")) {
+            try {
+                MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unsupported hash algorithm " + algorithm);
+            }
+        }
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Hash guardado para la versión actual del archivo, o null si no se ha calculado o el archivo cambió.
+     */
+    public byte[] cached(File file) {
+        Cached cached = cache.get(file.getPath());
+        if (cached != null && cached.size == file.length() && cached.lastModified == file.lastModified()) {
+            return cached.hash;
+        }
+        return null;
+    }
+
+    /**
+     * Aporta un hash ya conocido (por ejemplo del índice local) para no tener que leer el archivo.
+     */
+    public void remember(File file, long size, long lastModified, byte[] hash) {
+        cache.put(file.getPath(), new Cached(size, lastModified, hash));
+    }
+
+    public byte[] hash(File file) throws IOException {
+        byte[] hash = cached(file);
+        if (hash != null) {
+            return hash;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        hash = compute(file);
+        cache.put(file.getPath(), new Cached(size, lastModified, hash));
+        return hash;
+    }
+
+    /**
+     * Envuelve un flujo para calcular el hash de lo que se lea por él. El resultado sólo vale como hash del
+     * archivo si se lee entero desde el principio; se guarda con {@link #remember}.
+     */
+    public HashingInputStream hashing(InputStream in) throws IOException {
+        return new HashingInputStream(in, newDigest());
+    }
+
+    /**
+     * Calcula en paralelo los hashes de varios archivos. Los que no se pueden leer se omiten del resultado.
+     */
+    public Map<File, byte[]> hashAll(Collection<File> files) {
+        List<Callable<byte[]>> tasks = new ArrayList<>();
+        List<File> order = new ArrayList<>(files);
+        for (File file : order) {
+            tasks.add(() -> hash(file));
+        }
+        Map<File, byte[]> hashes = new HashMap<>();
+        List<Future<byte[]>> results;
+        try {
+            results = pool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return hashes;
+        }
+        for (int i = 0; i < order.size(); i++) {
+            try {
+                hashes.put(order.get(i), results.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Logger.logError("Unable to hash " + order.get(i) + " (" + e.getCause().getMessage() + ")");
+            }
+        }
+        return hashes;
+    }
+
+    public void shutdown() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    public static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private byte[] compute(File file) throws IOException {
+        Digest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                    digest.update(window);
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return digest.finish();
+    }
+
+    private Digest newDigest() throws IOException {
+        if (algorithm.equals("CRC32")) {
+            return new Digest(null, new CRC32());
+        }
+        try {
+            return new Digest(MessageDigest.getInstance(algorithm), null);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * {@link MessageDigest} o {@link CRC32}, según el algoritmo.
+     */
+    private static class Digest {
+        private final MessageDigest digest;
+        private final CRC32 crc;
+
+        Digest(MessageDigest digest, CRC32 crc) {
+            this.digest = digest;
+            this.crc = crc;
+        }
+
+        void update(ByteBuffer buffer) {
+            if (crc != null) {
+                crc.update(buffer);
+            } else {
+                digest.update(buffer);
+            }
+        }
+
+        void update(byte[] bytes, int off, int len) {
+            if (crc != null) {
+                crc.update(bytes, off, len);
+            } else {
+                digest.update(bytes, off, len);
+            }
+        }
+
+        byte[] finish() {
+            if (crc != null) {
+                long value = crc.getValue();
+                return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+            }
+            return digest.digest();
+        }
+    }
+
+    /**
+     * Flujo que va calculando el hash de todo lo leído.
+     */
+    public static class HashingInputStream extends FilterInputStream {
+        private final Digest digest;
+        private byte[] hash;
+
+        private HashingInputStream(InputStream in, Digest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                digest.update(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = in.read(buffer, off, len);
+            if (n > 0) {
+                digest.update(buffer, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Lo saltado no se hashearía
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Hash de lo leído hasta ahora; después ya no se puede seguir leyendo.
+         */
+        public byte[] getHash() {
+            if (hash == null) {
+                hash = digest.finish();
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Vigila recursivamente un árbol local con {@link WatchService} y agrupa las ráfagas de eventos.
+ * Los cambios se entregan como un conjunto de rutas cuando pasa {@code quietMillis} sin eventos nuevos,
+ * o como mucho {@code maxDelayMillis} después del primero. Si el sistema pierde eventos (OVERFLOW)
+ * se avisa con {@code onOverflow} para que se haga una reconciliación completa.
+ */
+public class DirectoryWatcher implements Closeable {
+
+    private final Path root;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final Consumer<Set<Path>> onChanges;
+    private final Runnable onOverflow;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private Thread thread;
+    private volatile boolean running;
+
+    public DirectoryWatcher(Path root, long quietMillis, long maxDelayMillis,
+                            Consumer<Set<Path>> onChanges, Runnable onOverflow) throws IOException {
+        this.root = root;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.onChanges = onChanges;
+        this.onOverflow = onOverflow;
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    public void start() throws IOException {
+        registerTree(root, null);
+        running = true;
+        thread = new Thread(this::run, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Registra un directorio y todos sus subdirectorios. Si {@code created} no es null, se añaden también
+     * los archivos que ya contiene: pueden haberse copiado antes de que el registro estuviera activo.
+     */
+    private void registerTree(Path start, Set<Path> created) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (created != null) {
+                    created.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        Set<Path> pending = new LinkedHashSet<>();
+        long firstEventAt = 0;
+        while (running) {
+            WatchKey key;
+            try {
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long untilMax = firstEventAt + maxDelayMillis - System.currentTimeMillis();
+                    key = watchService.poll(Math.max(0, Math.min(quietMillis, untilMax)), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (key == null) {
+                onChanges.accept(pending);
+                pending = new LinkedHashSet<>();
+                continue;
+            }
+            if (pending.isEmpty()) {
+                firstEventAt = System.currentTimeMillis();
+            }
+
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    Logger.logError("Watch events overflowed in " + dir + ", requesting full reconciliation");
+                    pending.clear();
+                    onOverflow.run();
+                    continue;
+                }
+                if (dir == null) {
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context());
+                pending.add(changed);
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(changed, pending);
+                    } catch (IOException e) {
+                        Logger.logError("Unable to watch " + changed + " (" + e.getMessage() + ")");
+                    }
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+            // Con escrituras continuas nunca hay silencio: se entrega igualmente al cumplirse el máximo
+            if (!pending.isEmpty() && System.currentTimeMillis() - firstEventAt >= maxDelayMillis) {
+                onChanges.accept(pending);
+                pending = new LinkedHashSet<>();
+            }
+        }
+    }
+}
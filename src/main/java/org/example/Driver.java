@@ -2,6 +2,8 @@ package org.example;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 public class Driver {
@@ -9,6 +11,7 @@ public class Driver {
     private static final int PORT = 14147;
     private static final String USER = "Admin";
     private static final String PASSWORD = "Admin1.";
+    private static final int RECONCILE_INTERVAL = 300;
 
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
@@ -17,8 +20,14 @@ public class Driver {
         File syncedDir = new File(syncedDirPath);
 
         try {
+            List<String> options = Arrays.asList(args);
             SincronizadorFTP sync = new SincronizadorFTP(syncedDir, SERVER, PORT, USER, PASSWORD);
-            sync.startSync(4);
+            sync.setDryRun(options.contains("--dry-run"));
+            if (options.contains("--watch")) {
+                sync.startWatch(RECONCILE_INTERVAL);
+            } else {
+                sync.startSync(4);
+            }
             System.out.println("Directory successfully synchronized:)");
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
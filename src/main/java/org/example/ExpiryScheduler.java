@@ -0,0 +1,254 @@
+package org.example;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Planificador de caducidades: una cola de prioridad ordenada por instante de caducidad y un hilo que
+ * duerme hasta el siguiente vencimiento. Al despertar espera {@code batchWindowMillis} más y entrega de una
+ * vez todas las rutas vencidas, así los archivos que caducan juntos se borran en un único lote.
+ * Nunca necesita listar el servidor: sólo conoce las rutas que se le registran.
+ * <p>
+ * Con {@link #start(ScheduledExecutorService)} no tiene hilo propio: programa una tarea en el ejecutor
+ * compartido para el siguiente vencimiento y la reprograma cuando se registra uno anterior.
+ */
+public class ExpiryScheduler implements Closeable {
+
+    private static class Item implements Comparable<Item> {
+        final String path;
+        final long expiresAt;
+
+        Item(String path, long expiresAt) {
+            this.path = path;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            return Long.compare(expiresAt, other.expiresAt);
+        }
+    }
+
+    private final Consumer<List<String>> onExpired;
+    private final long batchWindowMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Item> queue = new PriorityQueue<>();
+    // Plazo vigente de cada ruta; los elementos de la cola que no coinciden están obsoletos y se ignoran
+    private final Map<String, Long> deadlines = new HashMap<>();
+    private Thread thread;
+    private volatile boolean running;
+    private ScheduledExecutorService executor;
+    // Tarea programada en el ejecutor compartido y el instante para el que se programó
+    private ScheduledFuture<?> timer;
+    private long timerAt;
+
+    /**
+     * @param onExpired Recibe cada lote de rutas vencidas, en el hilo del planificador o del ejecutor
+     */
+    public ExpiryScheduler(Consumer<List<String>> onExpired, long batchWindowMillis) {
+        this.onExpired = onExpired;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "expiry-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Arranca sobre un ejecutor compartido, que no se cierra con {@link #close()}.
+     */
+    public void start(ScheduledExecutorService shared) {
+        lock.lock();
+        try {
+            running = true;
+            executor = shared;
+            arm();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra o sustituye el plazo de una ruta.
+     */
+    public void schedule(String path, long expiresAt) {
+        lock.lock();
+        try {
+            deadlines.put(path, expiresAt);
+            Item item = new Item(path, expiresAt);
+            queue.add(item);
+            if (queue.peek() == item) {
+                if (executor != null) {
+                    arm();
+                } else {
+                    changed.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cancel(String path) {
+        lock.lock();
+        try {
+            deadlines.remove(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return deadlines.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            List<String> due;
+            try {
+                due = awaitDue();
+            } catch (InterruptedException e) {
+                return;
+            }
+            deliver(due);
+        }
+    }
+
+    private void deliver(List<String> due) {
+        try {
+            onExpired.accept(due);
+        } catch (RuntimeException e) {
+            Logger.logError("Expiry batch failed (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Tarea del ejecutor compartido: entrega lo vencido y se programa para el siguiente vencimiento.
+     */
+    private void fire() {
+        List<String> due;
+        lock.lock();
+        try {
+            timer = null;
+            if (!running) {
+                return;
+            }
+            due = collectDue();
+        } finally {
+            lock.unlock();
+        }
+        if (!due.isEmpty()) {
+            deliver(due);
+        }
+        lock.lock();
+        try {
+            if (running) {
+                arm();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Programa {@link #fire()} para el primer vencimiento más la ventana, salvo que ya esté programada antes.
+     * Se llama con el cerrojo tomado.
+     */
+    private void arm() {
+        discardStale();
+        Item head = queue.peek();
+        if (head == null || !running) {
+            return;
+        }
+        long at = head.expiresAt + batchWindowMillis;
+        if (timer != null) {
+            if (timerAt <= at) {
+                return;
+            }
+            timer.cancel(false);
+        }
+        timerAt = at;
+        timer = executor.schedule(this::fire, Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private List<String> awaitDue() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                discardStale();
+                Item head = queue.peek();
+                if (head == null) {
+                    changed.await();
+                    continue;
+                }
+                long wait = head.expiresAt + batchWindowMillis - System.currentTimeMillis();
+                if (wait > 0) {
+                    changed.await(wait, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                List<String> due = collectDue();
+                if (!due.isEmpty()) {
+                    return due;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Saca de la cola todas las rutas vencidas. Se llama con el cerrojo tomado.
+     */
+    private List<String> collectDue() {
+        List<String> due = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        while (!queue.isEmpty() && queue.peek().expiresAt <= now) {
+            Item item = queue.poll();
+            if (Objects.equals(deadlines.get(item.path), item.expiresAt)) {
+                deadlines.remove(item.path);
+                due.add(item.path);
+            }
+        }
+        return due;
+    }
+
+    private void discardStale() {
+        Item head;
+        while ((head = queue.peek()) != null && !Objects.equals(deadlines.get(head.path), head.expiresAt)) {
+            queue.poll();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool acotado de sesiones FTP ya autenticadas y en modo binario.
+ * Las sesiones se crean bajo demanda hasta {@code maxSize}; cuando no queda ninguna libre,
+ * {@link #borrow()} espera a que otro hilo devuelva la suya o a que se libere un hueco al descartar una rota.
+ * Con un {@link ConnectionBudget}, cada sesión consume además una plaza del cupo compartido con otros pools
+ * del mismo servidor.
+ */
+public class FTPConnectionPool implements Closeable {
+
+    private final String server;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final ConnectionBudget budget;
+
+    // Sin límites, una sesión colgada bloquearía para siempre al hilo que la use
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int REPLY_TIMEOUT_MILLIS = 120000;
+    private static final long BUDGET_RETRY_MILLIS = 200;
+    // Red de seguridad por si un aviso se pierde: quien espera vuelve a mirar al menos cada segundo
+    private static final long RECHECK_MILLIS = 1000;
+
+    private final BlockingQueue<FTPClient> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+    // Se avisa al devolver, descartar o cerrar, que es cuando puede quedar algo libre para quien espera
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile boolean closed;
+
+    public FTPConnectionPool(String server, int port, String user, String password, int maxSize) {
+        this(server, port, user, password, maxSize, null);
+    }
+
+    /**
+     * @param budget Cupo compartido con otros pools, o null si este pool sólo está limitado por {@code maxSize}
+     */
+    public FTPConnectionPool(String server, int port, String user, String password, int maxSize, ConnectionBudget budget) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.server = server;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.budget = budget;
+        if (budget != null) {
+            budget.register(this);
+        }
+    }
+
+    /**
+     * Abre una sesión nueva fuera del pool: conecta, inicia sesión y activa el modo binario.
+     *
+     * @throws IOException Si el servidor rechaza la conexión o las credenciales
+     */
+    public FTPClient connect() throws IOException {
+        FTPClient client = new StreamingFTPClient();
+        client.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        client.setDefaultTimeout(REPLY_TIMEOUT_MILLIS);
+        client.connect(server, port);
+        int replyCode = client.getReplyCode();
+
+        if (!FTPReply.isPositiveCompletion(replyCode)) {
+            client.disconnect();
+            throw new IOException("Unable to establish connection");
+        }
+        if (!client.login(user, password)) {
+            client.disconnect();
+            throw new IOException("FTP login failed");
+        }
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        return client;
+    }
+
+    /**
+     * Obtiene una sesión del pool con el directorio de trabajo en la raíz, esperando lo que haga falta.
+     * Debe devolverse siempre con {@link #release(FTPClient)} o {@link #invalidate(FTPClient)}.
+     *
+     * @throws IOException Si no se puede conectar o el pool se cierra mientras se espera
+     */
+    public FTPClient borrow() throws IOException {
+        return borrow(0);
+    }
+
+    /**
+     * Como {@link #borrow()}, pero sin esperar más de {@code timeoutMillis} a que quede una sesión libre.
+     *
+     * @param timeoutMillis Espera máxima; 0 para esperar indefinidamente
+     * @throws IOException Si se agota la espera, no se puede conectar o el pool se cierra
+     */
+    public FTPClient borrow(long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            if (closed) {
+                throw new IOException("Connection pool is closed");
+            }
+            FTPClient client = idle.poll();
+            if (client == null) {
+                client = createIfAllowed();
+            }
+            if (client == null) {
+                long wait = budget == null ? RECHECK_MILLIS : BUDGET_RETRY_MILLIS;
+                if (timeoutMillis > 0) {
+                    long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (left <= 0) {
+                        throw new IOException("Timed out waiting for an FTP connection");
+                    }
+                    wait = Math.min(wait, left);
+                }
+                if (budget != null) {
+                    // Las sesiones propias pueden cerrarse por el cupo mientras se espera: se reintenta a ratos
+                    budget.reclaimIdle(this);
+                }
+                awaitChange(wait);
+                continue;
+            }
+            if (resetOrDiscard(client)) {
+                return client;
+            }
+        }
+    }
+
+    private void awaitChange(long millis) throws IOException {
+        lock.lock();
+        try {
+            // Se vuelve a comprobar con el cerrojo tomado: un aviso anterior a la espera no se pierde
+            if (!closed && idle.isEmpty() && created.get() >= maxSize) {
+                changed.await(millis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an FTP connection");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalChange() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Como {@link #borrow()}, pero sin esperar: devuelve null si no queda ninguna sesión libre ni hueco para crearla.
+     */
+    public FTPClient tryBorrow() throws IOException {
+        while (!closed) {
+            FTPClient client = idle.poll();
+            if (client == null) {
+                client = createIfAllowed();
+            }
+            if (client == null) {
+                return null;
+            }
+            if (resetOrDiscard(client)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cada préstamo empieza en "/", así el estado del directorio de trabajo no se hereda entre hilos.
+     * Una sesión que no responde se descarta.
+     */
+    private boolean resetOrDiscard(FTPClient client) {
+        try {
+            if (client.isConnected() && client.changeWorkingDirectory("/")) {
+                return true;
+            }
+        } catch (IOException e) {
+            Logger.logError("Discarding broken pooled connection (" + e.getMessage() + ")");
+        }
+        invalidate(client);
+        return false;
+    }
+
+    public void release(FTPClient client) {
+        if (closed || !client.isConnected()) {
+            invalidate(client);
+            return;
+        }
+        idle.offer(client);
+        signalChange();
+    }
+
+    /**
+     * Cierra una sesión que ha fallado y libera su hueco para que se pueda crear otra.
+     */
+    public void invalidate(FTPClient client) {
+        created.decrementAndGet();
+        if (budget != null) {
+            budget.release();
+        }
+        signalChange();
+        disconnectQuietly(client);
+    }
+
+    /**
+     * Cierra las sesiones que nadie está usando; las prestadas no se tocan.
+     */
+    public void closeIdle() {
+        FTPClient client;
+        while ((client = idle.poll()) != null) {
+            invalidate(client);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        signalChange();
+        closeIdle();
+        if (budget != null) {
+            budget.unregister(this);
+        }
+    }
+
+    private FTPClient createIfAllowed() throws IOException {
+        while (true) {
+            int current = created.get();
+            if (current >= maxSize) {
+                return null;
+            }
+            if (created.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        if (budget != null && !budget.tryAcquire()) {
+            created.decrementAndGet();
+            return null;
+        }
+        try {
+            return connect();
+        } catch (IOException e) {
+            created.decrementAndGet();
+            if (budget != null) {
+                budget.release();
+            }
+            throw e;
+        }
+    }
+
+    private static void disconnectQuietly(FTPClient client) {
+        try {
+            if (client.isConnected()) {
+                client.logout();
+            }
+        } catch (IOException ignored) {
+        }
+        try {
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
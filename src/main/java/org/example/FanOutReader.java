@@ -0,0 +1,187 @@
+package org.example;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lee un archivo una sola vez y reparte sus bloques entre varios destinos, cada uno con su cola acotada.
+ * Si un destino deja su cola llena más de {@code stallMillis}, se le desengancha: termina de vaciar su cola
+ * y sigue leyendo el archivo por su cuenta desde donde iba, así que un destino lento nunca frena a los demás.
+ * Un destino que cierra su flujo (por ejemplo, porque ha fallado la subida) deja de recibir bloques.
+ * Si el lector tarda más de {@code stallMillis} en empezar (por ejemplo, encolado en un ejecutor compartido
+ * lleno), el destino que lo espera se desengancha solo y lee el archivo por su cuenta.
+ */
+public class FanOutReader implements Runnable {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final byte[] END = new byte[0];
+    private static final long POLL_MILLIS = 100;
+
+    private final File file;
+    private final long stallMillis;
+    private final Consumer[] consumers;
+    private volatile boolean started;
+
+    /**
+     * @param queueChunks Bloques de {@value #CHUNK_SIZE} bytes que puede acumular cada destino
+     */
+    public FanOutReader(File file, int consumerCount, int queueChunks, long stallMillis) {
+        this.file = file;
+        this.stallMillis = stallMillis;
+        this.consumers = new Consumer[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            consumers[i] = new Consumer(queueChunks);
+        }
+    }
+
+    /**
+     * Flujo del destino {@code index}; cada uno se debe leer y cerrar una sola vez.
+     */
+    public InputStream stream(int index) {
+        return consumers[index];
+    }
+
+    @Override
+    public void run() {
+        started = true;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (!deliver(Arrays.copyOf(buffer, n))) {
+                    return;
+                }
+            }
+            deliver(END);
+        } catch (IOException e) {
+            // Cada destino repetirá la lectura por su cuenta y verá el error en su propia subida
+            Logger.logError("Shared read of " + file + " failed (" + e.getMessage() + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Consumer consumer : consumers) {
+                consumer.detached = true;
+            }
+        }
+    }
+
+    /**
+     * @return false si ya no queda ningún destino enganchado
+     */
+    private boolean deliver(byte[] chunk) throws InterruptedException {
+        boolean attached = false;
+        for (Consumer consumer : consumers) {
+            if (consumer.detached || consumer.closed) {
+                continue;
+            }
+            if (consumer.queue.offer(chunk, stallMillis, TimeUnit.MILLISECONDS)) {
+                attached = true;
+            } else if (!consumer.closed) {
+                consumer.detached = true;
+                Logger.logMessage("Slow target detached from shared read of " + file);
+            }
+        }
+        return attached;
+    }
+
+    private class Consumer extends InputStream {
+        private final BlockingQueue<byte[]> queue;
+        private volatile boolean detached;
+        private volatile boolean closed;
+        private byte[] chunk;
+        private int chunkOffset;
+        private long position;
+        private FileInputStream direct;
+        private boolean finished;
+
+        Consumer(int queueChunks) {
+            this.queue = new ArrayBlockingQueue<>(queueChunks);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (finished) {
+                return -1;
+            }
+            if (direct != null) {
+                return readDirect(buffer, off, len);
+            }
+            if (chunk == null || chunkOffset == chunk.length) {
+                chunk = nextChunk();
+                chunkOffset = 0;
+                if (chunk == null) {
+                    // Desenganchado y con la cola vacía: el resto se lee del archivo
+                    direct = new FileInputStream(file);
+                    direct.getChannel().position(position);
+                    return readDirect(buffer, off, len);
+                }
+                if (chunk == END) {
+                    finished = true;
+                    return -1;
+                }
+            }
+            int n = Math.min(len, chunk.length - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, buffer, off, n);
+            chunkOffset += n;
+            position += n;
+            return n;
+        }
+
+        /**
+         * @return El siguiente bloque, o null si el lector ya no va a entregar más
+         */
+        private byte[] nextChunk() throws IOException {
+            try {
+                long waitStart = System.currentTimeMillis();
+                while (true) {
+                    byte[] next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        return next;
+                    }
+                    if (!started && System.currentTimeMillis() - waitStart >= stallMillis) {
+                        detached = true;
+                    }
+                    if (detached) {
+                        // Lo que el lector entregó antes de desengancharlo ya está en la cola
+                        return queue.poll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for " + file);
+            }
+        }
+
+        private int readDirect(byte[] buffer, int off, int len) throws IOException {
+            int n = direct.read(buffer, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            queue.clear();
+            if (direct != null) {
+                direct.close();
+            }
+        }
+    }
+}
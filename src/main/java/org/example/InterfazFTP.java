@@ -4,8 +4,12 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class InterfazFTP extends JFrame {
     private JTextField ftpServerField;
@@ -19,9 +23,13 @@ public class InterfazFTP extends JFrame {
     private JButton selectFileButton;
     private JButton uploadButton;
     private JButton deleteFileButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
     private JLabel statusLabel;
-    private File selectedFile;
-    private SincronizadorFTP enhancedSuperSync;
+    private File[] selectedFiles;
+    // Una sola sesión para toda la ventana; las transferencias no se ejecutan en el hilo de eventos
+    private final TransferQueue transferQueue = new TransferQueue();
+    private final List<Transfer> transfers = new ArrayList<>();
 
     public InterfazFTP() {
         setTitle("Photo Uploader");
@@ -40,6 +48,9 @@ public class InterfazFTP extends JFrame {
         selectFileButton = new JButton("Select File");
         uploadButton = new JButton("Upload");
         deleteFileButton = new JButton("Delete File");
+        cancelButton = new JButton("Cancel");
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
         statusLabel = new JLabel();
 
         add(new JLabel("FTP Server:"));
@@ -61,6 +72,9 @@ public class InterfazFTP extends JFrame {
         add(selectFileButton);
         add(uploadButton);
         add(deleteFileButton);
+        add(cancelButton);
+        add(new JLabel("Progress:"));
+        add(progressBar);
         add(new JLabel("Status:"));
         add(statusLabel);
 
@@ -68,10 +82,13 @@ public class InterfazFTP extends JFrame {
             @Override
             public void actionPerformed(ActionEvent e) {
                 JFileChooser fileChooser = new JFileChooser();
+                fileChooser.setMultiSelectionEnabled(true);
                 int result = fileChooser.showOpenDialog(InterfazFTP.this);
                 if (result == JFileChooser.APPROVE_OPTION) {
-                    selectedFile = fileChooser.getSelectedFile();
-                    statusLabel.setText("Selected file: " + selectedFile.getName());
+                    selectedFiles = fileChooser.getSelectedFiles();
+                    statusLabel.setText(selectedFiles.length == 1
+                            ? "Selected file: " + selectedFiles[0].getName()
+                            : "Selected files: " + selectedFiles.length);
                 }
             }
         });
@@ -87,7 +104,7 @@ public class InterfazFTP extends JFrame {
                 String author = authorField.getText();
                 String lifetimeText = lifetimeField.getText();
 
-                if (selectedFile == null) {
+                if (selectedFiles == null || selectedFiles.length == 0) {
                     statusLabel.setText("No file selected");
                     return;
                 }
@@ -97,15 +114,9 @@ public class InterfazFTP extends JFrame {
                     int ftpPort = Integer.parseInt(ftpPortText);
                     int lifetime = Integer.parseInt(lifetimeText);
 
-                    try {
-                        File syncDirectory = new File(syncDir);
-                        enhancedSuperSync = new SincronizadorFTP(syncDirectory, ftpServer, ftpPort, ftpUser, ftpPassword);
-                        enhancedSuperSync.upload(selectedFile, author, lifetime * 1000L);
-                        statusLabel.setText("File uploaded successfully");
-                    } catch (IOException ex) {
-                        ex.printStackTrace();
-                        statusLabel.setText("Error: " + ex.getMessage());
-                    }
+                    TransferQueue.Connection connection = new TransferQueue.Connection(new File(syncDir), ftpServer, ftpPort, ftpUser, ftpPassword);
+                    transfers.addAll(transferQueue.submitUploads(connection, Arrays.asList(selectedFiles), author, lifetime * 1000L));
+                    statusLabel.setText("Queued " + selectedFiles.length + " file(s)");
                 } catch (NumberFormatException nfe) {
                     Logger.logError("Formato de número inválido para puerto FTP o vida útil: " + ftpPortText + ", " + lifetimeText);
                     JOptionPane.showMessageDialog(null, "Por favor ingresa un número válido para el puerto FTP y la vida útil.");
@@ -126,17 +137,89 @@ public class InterfazFTP extends JFrame {
                 String syncDir = syncDirField.getText();
                 String filePathToDelete = deleteFilePathField.getText();
 
-                try {
-                    File syncDirectory = new File(syncDir);
-                    enhancedSuperSync = new SincronizadorFTP(syncDirectory, ftpServer, ftpPort, ftpUser, ftpPassword);
-                    enhancedSuperSync.deleteFile(filePathToDelete, Boolean.parseBoolean(ftpUser));
-                    statusLabel.setText("File deleted successfully");
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                    statusLabel.setText("Error: " + ex.getMessage());
+                TransferQueue.Connection connection = new TransferQueue.Connection(new File(syncDir), ftpServer, ftpPort, ftpUser, ftpPassword);
+                transfers.add(transferQueue.submitDelete(connection, filePathToDelete, Boolean.parseBoolean(ftpUser)));
+                statusLabel.setText("Delete of " + filePathToDelete + " queued");
+            }
+        });
+
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                for (Transfer transfer : transfers) {
+                    transfer.cancel();
                 }
             }
         });
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                transferQueue.close();
+            }
+        });
+
+        // El progreso se consulta periódicamente desde el hilo de eventos en lugar de notificarse por cada bloque
+        new Timer(250, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateProgress();
+            }
+        }).start();
+    }
+
+    /**
+     * Muestra el avance conjunto de las transferencias del lote actual; cuando terminan todas, el lote se vacía.
+     */
+    private void updateProgress() {
+        if (transfers.isEmpty()) {
+            return;
+        }
+        long total = 0;
+        long done = 0;
+        double throughput = 0;
+        int finished = 0;
+        int failed = 0;
+        int cancelled = 0;
+        Transfer running = null;
+        for (Transfer transfer : transfers) {
+            total += transfer.getTotalBytes();
+            done += transfer.getTransferredBytes();
+            if (transfer.getState() == Transfer.State.RUNNING) {
+                running = transfer;
+                throughput = transfer.getThroughput();
+            }
+            if (transfer.isFinished()) {
+                finished++;
+                if (transfer.getState() == Transfer.State.FAILED) {
+                    failed++;
+                } else if (transfer.getState() == Transfer.State.CANCELLED) {
+                    cancelled++;
+                }
+            }
+        }
+        progressBar.setValue(total > 0 ? (int) (done * 1000 / total) : (finished == transfers.size() ? 1000 : 0));
+        progressBar.setString(finished + "/" + transfers.size());
+
+        if (finished < transfers.size()) {
+            statusLabel.setText(running == null ? "Waiting..."
+                    : running.getDescription() + String.format(" %.1f KB/s", throughput / 1024));
+            return;
+        }
+        if (failed > 0) {
+            String error = null;
+            for (Transfer transfer : transfers) {
+                if (transfer.getError() != null) {
+                    error = transfer.getError();
+                }
+            }
+            statusLabel.setText("Error: " + failed + " transfer(s) failed (" + error + ")");
+        } else if (cancelled > 0) {
+            statusLabel.setText(cancelled + " transfer(s) cancelled");
+        } else {
+            statusLabel.setText(transfers.size() == 1 ? "Transfer completed successfully" : transfers.size() + " transfers completed successfully");
+        }
+        transfers.clear();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,193 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Índice local de los archivos ya sincronizados: ruta remota, tamaño, fecha y, opcionalmente, hash del contenido.
+ * Si la firma local (tamaño + fecha) coincide con la del índice, el archivo no necesita consultar al servidor.
+ * Se guarda en binario y se carga con una sola lectura, sin parsear texto, para que arrancar con 100k+ entradas sea inmediato.
+ */
+public class LocalIndex {
+
+    private static final int MAGIC = 0x46494458; // "FIDX"
+    // La versión 1 guardaba la longitud de la ruta en 16 bits y corrompía las de más de 65535 bytes
+    private static final int VERSION = 2;
+
+    /**
+     * Firma de un archivo en el momento en que se subió.
+     */
+    public static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+
+        public Entry(long size, long lastModified, byte[] hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Hash del contenido, o null si no se calculó.
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        public boolean matches(File file) {
+            return size == file.length() && lastModified == file.lastModified();
+        }
+    }
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public LocalIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Carga el índice si existe. Un archivo dañado se descarta: el índice es sólo una caché.
+     */
+    public void load() throws IOException {
+        entries.clear();
+        if (!indexFile.exists()) {
+            return;
+        }
+        // Sin mapeo en memoria: en Windows un archivo mapeado no se puede reemplazar después en save()
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+        try {
+            int version = buffer.getInt() == MAGIC ? buffer.getInt() : -1;
+            if (version < 1 || version > VERSION) {
+                Logger.logError("Ignoring local index with unknown format: " + indexFile);
+                return;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                int pathLength = version == 1 ? buffer.getShort() & 0xFFFF : buffer.getInt();
+                if (pathLength < 0 || pathLength > buffer.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                byte[] pathBytes = new byte[pathLength];
+                buffer.get(pathBytes);
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                byte[] hash = null;
+                int hashLength = buffer.get() & 0xFF;
+                if (hashLength > 0) {
+                    hash = new byte[hashLength];
+                    buffer.get(hash);
+                }
+                entries.put(new String(pathBytes, StandardCharsets.UTF_8), new Entry(size, lastModified, hash));
+            }
+        } catch (BufferUnderflowException e) {
+            entries.clear();
+            Logger.logError("Ignoring truncated local index: " + indexFile);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Reescribe el índice en un archivo temporal y lo sustituye de forma atómica. No hace nada si no hubo cambios.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try {
+            write(tmp);
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void write(File tmp) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<String, Entry> copy = Map.copyOf(entries);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, Entry> e : copy.entrySet()) {
+                byte[] pathBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(pathBytes.length);
+                out.write(pathBytes);
+                out.writeLong(e.getValue().getSize());
+                out.writeLong(e.getValue().getLastModified());
+                byte[] hash = e.getValue().getHash();
+                out.writeByte(hash == null ? 0 : hash.length);
+                if (hash != null) {
+                    out.write(hash);
+                }
+            }
+        }
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * @return true si el archivo está indexado con el mismo tamaño y fecha que tiene ahora
+     */
+    public boolean isUnchanged(String path, File file) {
+        Entry entry = entries.get(path);
+        return entry != null && entry.matches(file);
+    }
+
+    public void record(String path, File file, byte[] hash) {
+        record(path, file.length(), file.lastModified(), hash);
+    }
+
+    /**
+     * Anota la firma que tenía el archivo al empezar a enviarlo, no la de ahora: si cambió durante la subida,
+     * la próxima pasada ve que no coincide y lo vuelve a subir.
+     */
+    public void record(String path, long size, long lastModified, byte[] hash) {
+        entries.put(path, new Entry(size, lastModified, hash));
+        dirty = true;
+    }
+
+    public void remove(String path) {
+        if (entries.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Olvida las rutas que cumplen {@code filter}.
+     */
+    public void removeIf(Predicate<String> filter) {
+        if (entries.keySet().removeIf(filter)) {
+            dirty = true;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -1,35 +1,328 @@
 package org.example;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Registro asíncrono: {@link #logMessage} y {@link #logError} sólo encolan en un buffer circular acotado
+ * y sin bloqueos, y un único hilo escritor mantiene abiertos {@code sync.log} y {@code error.log}.
+ * Los archivos rotan por tamaño ({@code logger.maxBytes}, {@code logger.maxFiles}) y, opcionalmente, al cambiar
+ * de día ({@code logger.rotateDaily}). Con el buffer lleno se descarta o se espera según {@code logger.overflow}
+ * (DROP o BLOCK); los descartes se cuentan y se anotan en {@code error.log}.
+ */
 public class Logger {
     public static final String ERROR_LOG_PATH = "logs/error.log";
     public static final String SYNC_LOG_PATH = "logs/sync.log";
 
-    private static void log(String msg, String logFile) {
-        try {
-            Path path = Path.of(logFile);
-            Files.createDirectories(path.getParent());
-            Files.writeString(path, getTime() + " " + msg + '\n', StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int CAPACITY = Integer.getInteger("logger.capacity", 8192);
+    private static final long MAX_BYTES = Long.getLong("logger.maxBytes", 10L * 1024 * 1024);
+    private static final int MAX_FILES = Integer.getInteger("logger.maxFiles", 5);
+    private static final boolean ROTATE_DAILY = Boolean.getBoolean("logger.rotateDaily");
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    private static volatile OverflowPolicy overflowPolicy = parseOverflowPolicy(System.getProperty("logger.overflow"));
+
+    private static final RingBuffer buffer = new RingBuffer(CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final LogFile syncLog = new LogFile(SYNC_LOG_PATH);
+    private static final LogFile errorLog = new LogFile(ERROR_LOG_PATH);
+    private static volatile long written;
+    private static final Thread writer = new Thread(Logger::drain, "logger-writer");
+
+    static {
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::flush, "logger-shutdown"));
+    }
+
+    private static final class Record {
+        final long time;
+        final String msg;
+        final LogFile target;
+
+        Record(long time, String msg, LogFile target) {
+            this.time = time;
+            this.msg = msg;
+            this.target = target;
+        }
+    }
+
+    private static void log(String msg, LogFile logFile) {
+        Record record = new Record(System.currentTimeMillis(), msg, logFile);
+        while (!buffer.offer(record)) {
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
         }
+        LockSupport.unpark(writer);
     }
 
     public static void logError(String msg) {
-        log(msg, ERROR_LOG_PATH);
+        log(msg, errorLog);
     }
 
     public static void logMessage(String msg) {
-        log(msg, SYNC_LOG_PATH);
+        log(msg, syncLog);
     }
 
     public static String getTime() {
-        return DateTimeFormatter.ofPattern("HH:mm:ss").format(LocalDateTime.now());
+        return TIME_FORMAT.format(LocalDateTime.now());
+    }
+
+    public static void setOverflowPolicy(OverflowPolicy policy) {
+        overflowPolicy = policy;
+    }
+
+    /**
+     * Política de {@code logger.overflow}. Un valor desconocido se avisa por la salida de error (el registro
+     * aún no existe) y se usa BLOCK, para que un error de configuración no deje la clase sin inicializar.
+     */
+    static OverflowPolicy parseOverflowPolicy(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return OverflowPolicy.BLOCK;
+        }
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid logger.overflow value '" + value + "', using BLOCK");
+            return OverflowPolicy.BLOCK;
+        }
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public static int getQueueDepth() {
+        return buffer.size();
+    }
+
+    /**
+     * Espera a que el hilo escritor haya volcado a disco todo lo encolado hasta ahora.
+     */
+    public static void flush() {
+        long target = buffer.published();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        while (written < target && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void drain() {
+        long reportedDrops = 0;
+        while (true) {
+            // Si el hilo escritor muriera, los productores con BLOCK esperarían para siempre
+            try {
+                Record record = buffer.poll();
+                if (record == null) {
+                    long drops = dropped.get();
+                    if (drops > reportedDrops) {
+                        errorLog.write(System.currentTimeMillis(), (drops - reportedDrops) + " log messages dropped (buffer full)");
+                        reportedDrops = drops;
+                    }
+                    long consumed = buffer.consumed();
+                    if (consumed != written) {
+                        syncLog.flush();
+                        errorLog.flush();
+                        written = consumed;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                    continue;
+                }
+                record.target.write(record.time, record.msg);
+            } catch (RuntimeException e) {
+                System.err.println("Logger writer error (" + e + ")");
+            }
+        }
+    }
+
+    /**
+     * Archivo de registro abierto de forma permanente. Sólo lo usa el hilo escritor.
+     */
+    private static final class LogFile {
+        private final Path path;
+        private OutputStream out;
+        // En bytes, igual que logger.maxBytes
+        private long size;
+        private LocalDate day;
+        private boolean failed;
+
+        LogFile(String path) {
+            this.path = Path.of(path);
+        }
+
+        void write(long time, String msg) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+            byte[] line = (TIME_FORMAT.format(dateTime) + " " + msg + '\n').getBytes(StandardCharsets.UTF_8);
+            try {
+                if (out == null) {
+                    open(dateTime.toLocalDate());
+                } else if (size >= MAX_BYTES || (ROTATE_DAILY && !dateTime.toLocalDate().equals(day))) {
+                    rotate(dateTime.toLocalDate());
+                }
+                out.write(line);
+                size += line.length;
+                failed = false;
+            } catch (IOException e) {
+                // No se propaga: un fallo del registro no debe tumbar la sincronización
+                if (!failed) {
+                    System.err.println("Unable to write " + path + " (" + e.getMessage() + ")");
+                    failed = true;
+                }
+                close();
+            }
+        }
+
+        void flush() {
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        private void open(LocalDate today) throws IOException {
+            Files.createDirectories(path.getParent());
+            size = Files.exists(path) ? Files.size(path) : 0;
+            day = Files.exists(path)
+                    ? LocalDate.ofInstant(Files.getLastModifiedTime(path).toInstant(), ZoneId.systemDefault())
+                    : today;
+            out = newOutput();
+            if (size >= MAX_BYTES || (ROTATE_DAILY && !today.equals(day))) {
+                rotate(today);
+            }
+        }
+
+        /**
+         * Por tamaño: sync.log pasa a sync.log.1, sync.log.1 a sync.log.2... hasta {@code MAX_FILES}.
+         * Por fecha: el archivo del día anterior se guarda como sync.log.yyyy-MM-dd.
+         */
+        private void rotate(LocalDate today) throws IOException {
+            close();
+            String name = path.getFileName().toString();
+            if (ROTATE_DAILY && !today.equals(day)) {
+                Files.move(path, path.resolveSibling(name + "." + day), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(path.resolveSibling(name + "." + MAX_FILES));
+                for (int i = MAX_FILES - 1; i >= 1; i--) {
+                    Path older = path.resolveSibling(name + "." + i);
+                    if (Files.exists(older)) {
+                        Files.move(older, path.resolveSibling(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(path, path.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            out = newOutput();
+            size = 0;
+            day = today;
+        }
+
+        private OutputStream newOutput() throws IOException {
+            return new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        }
+
+        private void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Buffer circular acotado de varios productores y un consumidor, sin bloqueos:
+     * cada hueco lleva un número de secuencia que indica si está libre o publicado.
+     */
+    private static final class RingBuffer {
+        private final Object[] items;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            items = new Object[size];
+            sequences = new AtomicLongArray(size);
+            mask = size - 1;
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Record record) {
+            long pos = tail.get();
+            while (true) {
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        items[index] = record;
+                        sequences.set(index, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+                } else if (diff < 0) {
+                    return false;
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+
+        Record poll() {
+            long pos = head;
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                return null;
+            }
+            Record record = (Record) items[index];
+            items[index] = null;
+            sequences.set(index, pos + mask + 1);
+            head = pos + 1;
+            return record;
+        }
+
+        long published() {
+            return tail.get();
+        }
+
+        long consumed() {
+            return head;
+        }
+
+        int size() {
+            return (int) (tail.get() - head);
+        }
     }
 }
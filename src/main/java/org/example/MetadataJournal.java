@@ -0,0 +1,408 @@
+package org.example;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persistencia de propietarios y tiempos de vida mediante un diario de solo-añadir.
+ * Cada cambio se escribe como un registro con CRC al final de {@code metadata.journal}; los registros se
+ * sincronizan con disco por lotes cada {@link #FSYNC_INTERVAL_MILLIS} ms, desde un hilo propio o desde un
+ * ejecutor compartido (véase {@link #open(ScheduledExecutorService)}). Cuando el diario crece mucho más
+ * que el estado vivo se compacta en {@code metadata.snapshot} y se vacía.
+ * Al arrancar se carga la instantánea y se reproduce el diario; un registro a medio escribir por un corte
+ * se descarta y se trunca. La primera vez se importan los antiguos {@code metadata.txt} y {@code lifetime_metadata.txt}.
+ */
+public class MetadataJournal implements Closeable {
+
+    public static final String JOURNAL_FILE = "metadata.journal";
+    public static final String SNAPSHOT_FILE = "metadata.snapshot";
+
+    private static final String LEGACY_METADATA_FILE = "metadata.txt";
+    private static final String LEGACY_LIFETIME_METADATA_FILE = "lifetime_metadata.txt";
+
+    private static final int SNAPSHOT_MAGIC = 0x4D534E50; // "MSNP"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final long FSYNC_INTERVAL_MILLIS = 200;
+    private static final int COMPACT_MIN_RECORDS = 10_000;
+
+    private static final byte PUT_OWNER = 1;
+    private static final byte REMOVE_OWNER = 2;
+    private static final byte PUT_LIFETIME = 3;
+    private static final byte REMOVE_LIFETIME = 4;
+    private static final byte PUT_PENDING = 5;
+    private static final byte REMOVE_PENDING = 6;
+
+    private final File dir;
+    private final Map<String, String> owners;
+    private final Map<String, Long> lifetimes;
+    // Subidas empezadas y no verificadas: ruta -> {tamaño, fecha} del archivo local que se estaba enviando
+    private final Map<String, long[]> pendingUploads = new HashMap<>();
+
+    private FileOutputStream journalStream;
+    private DataOutputStream journal;
+    private int recordsSinceSnapshot;
+    private boolean unsynced;
+    // Sólo el propio; el compartido no se cierra aquí
+    private ScheduledExecutorService flusher;
+    private ScheduledFuture<?> flushTask;
+    // Se quita en close(): con una por open() se acumularían hilos y diarios cerrados hasta salir
+    private Thread shutdownHook;
+
+    /**
+     * @param owners    Mapa que se rellena al reproducir y se mantiene al día con cada cambio
+     * @param lifetimes Idem para los instantes de caducidad
+     */
+    public MetadataJournal(File dir, Map<String, String> owners, Map<String, Long> lifetimes) {
+        this.dir = dir;
+        this.owners = owners;
+        this.lifetimes = lifetimes;
+    }
+
+    /**
+     * Reconstruye el estado desde disco y deja el diario abierto para añadir.
+     *
+     * @throws IOException Si la instantánea existe pero no se puede leer
+     */
+    public synchronized void open() throws IOException {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metadata-journal-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            open(flusher);
+        } catch (IOException | RuntimeException e) {
+            flusher.shutdown();
+            flusher = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Como {@link #open()}, pero las sincronizaciones periódicas se programan en un ejecutor compartido.
+     */
+    public synchronized void open(ScheduledExecutorService scheduler) throws IOException {
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        File journalFile = new File(dir, JOURNAL_FILE);
+        owners.clear();
+        lifetimes.clear();
+        pendingUploads.clear();
+
+        if (snapshot.exists()) {
+            readSnapshot(snapshot);
+        } else if (!journalFile.exists()) {
+            migrateLegacy();
+        }
+        long validLength = journalFile.exists() ? replay(journalFile) : 0;
+
+        journalStream = new FileOutputStream(journalFile, true);
+        FileChannel channel = journalStream.getChannel();
+        if (channel.size() > validLength) {
+            Logger.logError("Discarding " + (channel.size() - validLength) + " bytes of incomplete metadata journal");
+            channel.truncate(validLength);
+        }
+        journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+
+        flushTask = scheduler.scheduleWithFixedDelay(this::syncQuietly, FSYNC_INTERVAL_MILLIS, FSYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        shutdownHook = new Thread(this::syncQuietly, "metadata-journal-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public synchronized void putOwner(String path, String owner) throws IOException {
+        owners.put(path, owner);
+        append(PUT_OWNER, path, out -> out.writeUTF(owner));
+    }
+
+    public synchronized void removeOwner(String path) throws IOException {
+        if (owners.remove(path) != null) {
+            append(REMOVE_OWNER, path, null);
+        }
+    }
+
+    public synchronized void putLifetime(String path, long expiresAt) throws IOException {
+        lifetimes.put(path, expiresAt);
+        append(PUT_LIFETIME, path, out -> out.writeLong(expiresAt));
+    }
+
+    public synchronized void removeLifetime(String path) throws IOException {
+        if (lifetimes.remove(path) != null) {
+            append(REMOVE_LIFETIME, path, null);
+        }
+    }
+
+    /**
+     * Anota que empieza la subida de esta versión del archivo, para poder reanudarla tras un corte.
+     */
+    public synchronized void putPendingUpload(String path, long size, long lastModified) throws IOException {
+        pendingUploads.put(path, new long[]{size, lastModified});
+        append(PUT_PENDING, path, out -> {
+            out.writeLong(size);
+            out.writeLong(lastModified);
+        });
+    }
+
+    public synchronized void removePendingUpload(String path) throws IOException {
+        if (pendingUploads.remove(path) != null) {
+            append(REMOVE_PENDING, path, null);
+        }
+    }
+
+    /**
+     * @return true si hay una subida a medias de exactamente esta versión (tamaño y fecha) del archivo
+     */
+    public synchronized boolean isPendingUpload(String path, long size, long lastModified) {
+        long[] pending = pendingUploads.get(path);
+        return pending != null && pending[0] == size && pending[1] == lastModified;
+    }
+
+    /**
+     * Vuelca a disco los registros pendientes. Normalmente lo hace el hilo de fondo;
+     * se llama a mano al terminar un lote para no esperar al siguiente intervalo.
+     */
+    public synchronized void sync() throws IOException {
+        if (journal == null || !unsynced) {
+            return;
+        }
+        journal.flush();
+        journalStream.getChannel().force(false);
+        unsynced = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        flushTask.cancel(false);
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Ya se está saliendo: el gancho se ejecuta igualmente y no hace nada con el diario cerrado
+        }
+        shutdownHook = null;
+        sync();
+        journal.close();
+        journal = null;
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private synchronized void append(byte op, String path, Payload payload) throws IOException {
+        if (journal == null) {
+            throw new IOException("Metadata journal is not open");
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(op);
+        out.writeUTF(path);
+        if (payload != null) {
+            payload.write(out);
+        }
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        journal.writeInt(bytes.length);
+        journal.write(bytes);
+        journal.writeInt((int) crc.getValue());
+        unsynced = true;
+
+        if (++recordsSinceSnapshot >= COMPACT_MIN_RECORDS && recordsSinceSnapshot > 2 * (owners.size() + lifetimes.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Escribe el estado completo en la instantánea y vacía el diario. Si se corta entre ambos pasos,
+     * reproducir el diario sobre la instantánea nueva da el mismo resultado.
+     */
+    private void compact() throws IOException {
+        sync();
+        writeSnapshot();
+        journalStream.getChannel().truncate(0);
+        recordsSinceSnapshot = 0;
+    }
+
+    /**
+     * @return Longitud del prefijo válido del diario
+     */
+    private long replay(File journalFile) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > 1 << 20) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                int crcValue;
+                try {
+                    in.readFully(bytes);
+                    crcValue = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != crcValue) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(bytes)));
+                valid += 4 + length + 4;
+                recordsSinceSnapshot++;
+            }
+        }
+        return valid;
+    }
+
+    private void apply(DataInputStream record) throws IOException {
+        byte op = record.readByte();
+        String path = record.readUTF();
+        switch (op) {
+            case PUT_OWNER:
+                owners.put(path, record.readUTF());
+                break;
+            case REMOVE_OWNER:
+                owners.remove(path);
+                break;
+            case PUT_LIFETIME:
+                lifetimes.put(path, record.readLong());
+                break;
+            case REMOVE_LIFETIME:
+                lifetimes.remove(path);
+                break;
+            case PUT_PENDING:
+                pendingUploads.put(path, new long[]{record.readLong(), record.readLong()});
+                break;
+            case REMOVE_PENDING:
+                pendingUploads.remove(path);
+                break;
+            default:
+                throw new IOException("Unknown metadata journal record " + op);
+        }
+    }
+
+    private void readSnapshot(File snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            int version = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > SNAPSHOT_VERSION) {
+                throw new IOException("Unknown metadata snapshot format: " + snapshot);
+            }
+            int ownerCount = in.readInt();
+            for (int i = 0; i < ownerCount; i++) {
+                owners.put(in.readUTF(), in.readUTF());
+            }
+            int lifetimeCount = in.readInt();
+            for (int i = 0; i < lifetimeCount; i++) {
+                lifetimes.put(in.readUTF(), in.readLong());
+            }
+            if (version >= 2) {
+                int pendingCount = in.readInt();
+                for (int i = 0; i < pendingCount; i++) {
+                    pendingUploads.put(in.readUTF(), new long[]{in.readLong(), in.readLong()});
+                }
+            }
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+        Map<String, String> ownersCopy = Map.copyOf(owners);
+        Map<String, Long> lifetimesCopy = Map.copyOf(lifetimes);
+        Map<String, long[]> pendingCopy = Map.copyOf(pendingUploads);
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(ownersCopy.size());
+            for (Map.Entry<String, String> entry : ownersCopy.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(lifetimesCopy.size());
+            for (Map.Entry<String, Long> entry : lifetimesCopy.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(pendingCopy.size());
+            for (Map.Entry<String, long[]> entry : pendingCopy.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+            out.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Importa los archivos de texto de versiones anteriores y los renombra a {@code .migrated}.
+     *
+     * @return true si había algo que importar
+     */
+    private boolean migrateLegacy() throws IOException {
+        File metadataFile = new File(dir, LEGACY_METADATA_FILE);
+        File lifetimeFile = new File(dir, LEGACY_LIFETIME_METADATA_FILE);
+        if (!metadataFile.exists() && !lifetimeFile.exists()) {
+            return false;
+        }
+        if (metadataFile.exists()) {
+            List<String> lines = Files.readAllLines(metadataFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] parts = line.split(" ");
+                if (parts.length == 2) {
+                    owners.put(parts[0], parts[1]);
+                }
+            }
+        }
+        if (lifetimeFile.exists()) {
+            List<String> lines = Files.readAllLines(lifetimeFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] parts = line.split(" ");
+                if (parts.length == 2) {
+                    lifetimes.put(parts[0], Long.parseLong(parts[1]));
+                }
+            }
+        }
+        writeSnapshot();
+        for (File legacy : new File[]{metadataFile, lifetimeFile}) {
+            if (legacy.exists()) {
+                Files.move(legacy.toPath(), new File(dir, legacy.getName() + ".migrated").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Logger.logMessage("Migrated " + owners.size() + " owners and " + lifetimes.size() + " lifetimes to " + SNAPSHOT_FILE);
+        return true;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            Logger.logError("Unable to sync metadata journal (" + e.getMessage() + ")");
+        }
+    }
+}
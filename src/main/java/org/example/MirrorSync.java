@@ -0,0 +1,274 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Réplica de un mismo árbol local en varios servidores: un destino principal y uno o más espejos.
+ * Cada pasada recorre el árbol local una sola vez y cada archivo cambiado se lee una sola vez
+ * ({@link FanOutReader}) para todos los destinos que lo necesitan.
+ * <p>
+ * Cada destino es un {@link SincronizadorFTP} con su propio recorrido remoto, metadatos e índice local (los del
+ * principal en el directorio sincronizado, los de los espejos en {@code .mirror/<nombre>}) y su propio estado
+ * de fallos. Un destino que no responde se salta con espera exponencial, uno que tarda en listar sube sus
+ * archivos por su cuenta y uno que sigue ocupado con la pasada anterior no entra en la siguiente; en ningún
+ * caso hace esperar a los demás.
+ * <p>
+ * En modo demonio no tiene hilos propios: las pasadas y los destinos van en el ejecutor de pasadas del
+ * {@link SyncRuntime} y las lecturas compartidas en el de subidas. Con pocos hilos, el listado que nadie ha
+ * empezado lo hace la propia pasada y la lectura que no llega a empezar deja a sus destinos leer por su cuenta.
+ */
+public class MirrorSync {
+
+    private static final long DEFAULT_PLAN_WAIT_MILLIS = 30000;
+    private static final long DEFAULT_STALL_MILLIS = 5000;
+    private static final int QUEUE_CHUNKS = 16;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 300000;
+
+    private final File syncedDir;
+    private final int workers;
+    private final SyncRuntime runtime;
+    private final List<Target> targets = new ArrayList<>();
+    // Propios, o los del runtime, que no se cierran aquí
+    private final ExecutorService targetExecutor;
+    private final ExecutorService readExecutor;
+    private AdaptiveScheduler scheduler;
+    private long planWaitMillis = DEFAULT_PLAN_WAIT_MILLIS;
+    private long stallMillis = DEFAULT_STALL_MILLIS;
+
+    /**
+     * @param workers Subidas simultáneas por destino y lecturas compartidas simultáneas
+     * @param runtime Cupo de conexiones e hilos compartidos (modo demonio), o null
+     */
+    public MirrorSync(File syncedDir, int workers, SyncRuntime runtime) {
+        this.syncedDir = syncedDir;
+        this.workers = workers;
+        this.runtime = runtime;
+        if (runtime != null) {
+            this.targetExecutor = runtime.getPassExecutor();
+            this.readExecutor = runtime.getUploadExecutor();
+        } else {
+            this.targetExecutor = Executors.newCachedThreadPool(threads("mirror-target"));
+            this.readExecutor = Executors.newFixedThreadPool(workers, threads("mirror-read"));
+        }
+    }
+
+    /**
+     * Añade un destino. El primero es el principal y el único que hace copias de seguridad.
+     *
+     * @throws IOException Si el directorio no es válido o el servidor no responde
+     */
+    public void addTarget(String name, String server, int port, String user, String password) throws IOException {
+        boolean primary = targets.isEmpty();
+        File stateDir = primary
+                ? syncedDir
+                : new File(new File(syncedDir, SincronizadorFTP.MIRROR_STATE_DIR), name);
+        SincronizadorFTP sync = new SincronizadorFTP(syncedDir, stateDir, server, port, user, password, workers, runtime);
+        if (!primary) {
+            sync.setBackupDir(null);
+        }
+        targets.add(new Target(name, sync));
+    }
+
+    /**
+     * Cambia lo que se espera al listado de cada destino antes de dejarle leer por su cuenta y lo que puede
+     * tener llena su cola de una lectura compartida. Visible en el paquete para las pruebas.
+     */
+    void setTimeouts(long planWaitMillis, long stallMillis) {
+        this.planWaitMillis = planWaitMillis;
+        this.stallMillis = stallMillis;
+    }
+
+    /**
+     * Sincronización periódica con intervalo adaptable entre {@code minInterval} y {@code maxInterval} segundos.
+     */
+    public void startSync(int minInterval, int maxInterval) {
+        if (targets.isEmpty()) {
+            throw new IllegalStateException("No mirror targets configured");
+        }
+        for (Target target : targets) {
+            target.sync.startMirror();
+        }
+        long minMillis = TimeUnit.SECONDS.toMillis(minInterval);
+        long maxMillis = TimeUnit.SECONDS.toMillis(maxInterval);
+        scheduler = runtime != null
+                ? new AdaptiveScheduler(runtime.getPassExecutor(), this::pass, minMillis, maxMillis)
+                : new AdaptiveScheduler("mirror-pass", this::pass, minMillis, maxMillis);
+        scheduler.start(minMillis);
+    }
+
+    public void stopSync() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        if (runtime == null) {
+            readExecutor.shutdownNow();
+            targetExecutor.shutdown();
+        }
+        for (Target target : targets) {
+            target.sync.stopSync();
+        }
+    }
+
+    /**
+     * Lanza la pasada de cada destino disponible y vuelve sin esperar a que terminen.
+     * Visible en el paquete para las pruebas.
+     *
+     * @return true si algún destino tiene cambios que aplicar
+     */
+    boolean pass() {
+        Map<String, File> localTree = targets.get(0).sync.scanLocalTree();
+        long now = System.currentTimeMillis();
+        Map<Target, FutureTask<SyncPlan>> planning = new LinkedHashMap<>();
+        for (Target target : targets) {
+            if (target.busy) {
+                Logger.logMessage("Mirror " + target.name + " still busy with the previous pass, skipped");
+            } else if (now >= target.retryAt) {
+                target.busy = true;
+                FutureTask<SyncPlan> plan = new FutureTask<>(() -> target.sync.planMirrorPass(localTree));
+                planning.put(target, plan);
+                targetExecutor.execute(plan);
+            }
+        }
+
+        long deadline = now + planWaitMillis;
+        Map<Target, SyncPlan> ready = new LinkedHashMap<>();
+        boolean changed = false;
+        for (Map.Entry<Target, FutureTask<SyncPlan>> entry : planning.entrySet()) {
+            Target target = entry.getKey();
+            FutureTask<SyncPlan> plan = entry.getValue();
+            if (runtime != null) {
+                // Sin hilos libres en el ejecutor compartido el listado no ha empezado: se hace aquí
+                plan.run();
+            }
+            try {
+                SyncPlan result = plan.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                ready.put(target, result);
+                changed |= !result.isEmpty();
+            } catch (TimeoutException e) {
+                Logger.logMessage("Mirror " + target.name + " is slow to list, it will read its files on its own");
+                targetExecutor.execute(() -> executeLate(target, plan, localTree));
+            } catch (ExecutionException e) {
+                failed(target, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                target.busy = false;
+            }
+        }
+
+        // Sólo se comparte la lectura de los archivos que necesita más de un destino
+        Map<File, List<Target>> readers = new LinkedHashMap<>();
+        for (Map.Entry<Target, SyncPlan> entry : ready.entrySet()) {
+            for (SyncPlan.Action action : entry.getValue().get(SyncPlan.Type.UPLOAD)) {
+                readers.computeIfAbsent(action.getLocalFile(), f -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        Map<Target, Map<File, InputStream>> sources = new HashMap<>();
+        List<FanOutReader> sharedReads = new ArrayList<>();
+        for (Map.Entry<File, List<Target>> entry : readers.entrySet()) {
+            List<Target> readersOfFile = entry.getValue();
+            if (readersOfFile.size() < 2) {
+                continue;
+            }
+            FanOutReader reader = new FanOutReader(entry.getKey(), readersOfFile.size(), QUEUE_CHUNKS, stallMillis);
+            for (int i = 0; i < readersOfFile.size(); i++) {
+                sources.computeIfAbsent(readersOfFile.get(i), t -> new HashMap<>()).put(entry.getKey(), reader.stream(i));
+            }
+            sharedReads.add(reader);
+        }
+
+        for (Map.Entry<Target, SyncPlan> entry : ready.entrySet()) {
+            Target target = entry.getKey();
+            Map<File, InputStream> targetSources = sources.getOrDefault(target, Collections.emptyMap());
+            targetExecutor.execute(() -> execute(target, entry.getValue(), targetSources, localTree));
+        }
+        sharedReads.forEach(readExecutor::execute);
+        return changed;
+    }
+
+    private void executeLate(Target target, FutureTask<SyncPlan> plan, Map<String, File> localTree) {
+        try {
+            execute(target, plan.get(), Collections.emptyMap(), localTree);
+        } catch (ExecutionException e) {
+            failed(target, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            target.busy = false;
+        }
+    }
+
+    private void execute(Target target, SyncPlan plan, Map<File, InputStream> sources, Map<String, File> localTree) {
+        try {
+            if (target.sync.executeMirrorPlan(plan, sources, localTree)) {
+                succeeded(target);
+            } else {
+                failed(target, "actions pending");
+            }
+        } catch (RuntimeException e) {
+            failed(target, e.toString());
+        } finally {
+            // Un flujo que no llegó a usarse no debe retener a su lector
+            for (InputStream source : sources.values()) {
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                }
+            }
+            target.busy = false;
+        }
+    }
+
+    private void succeeded(Target target) {
+        synchronized (target) {
+            if (target.failures > 0) {
+                Logger.logMessage("Mirror " + target.name + " recovered after " + target.failures + " failed pass(es)");
+            }
+            target.failures = 0;
+            target.retryAt = 0;
+        }
+    }
+
+    private void failed(Target target, String reason) {
+        synchronized (target) {
+            target.failures++;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(target.failures - 1, 20));
+            target.retryAt = System.currentTimeMillis() + backoff;
+            Logger.logError("Mirror " + target.name + " failed (" + reason + "), next attempt in " + backoff + " ms");
+        }
+        target.busy = false;
+    }
+
+    private static ThreadFactory threads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> new Thread(r, prefix + "-" + count.incrementAndGet());
+    }
+
+    private static class Target {
+        private final String name;
+        private final SincronizadorFTP sync;
+        private volatile boolean busy;
+        private volatile long retryAt;
+        private int failures;
+
+        Target(String name, SincronizadorFTP sync) {
+            this.name = name;
+            this.sync = sync;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Límite de velocidad, fijo o según la hora del día. Formatos admitidos:
+ * <pre>
+ * 4M                                  siempre 4 MB/s
+ * 08:00-18:00=512K,18:00-08:00=8M     de día 512 KB/s, de noche 8 MB/s
+ * 09:00-17:00=1M                      el resto del día sin límite
+ * </pre>
+ * Las unidades son K, M y G (bytes por segundo, base 1024); 0 significa sin límite. Un tramo cuyo fin es
+ * anterior a su inicio cruza la medianoche.
+ */
+public class RateSchedule {
+
+    public static final RateSchedule UNLIMITED = new RateSchedule(new ArrayList<>(), 0);
+
+    private static final class Window {
+        final int startMinute;
+        final int endMinute;
+        final long rate;
+
+        Window(int startMinute, int endMinute, long rate) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.rate = rate;
+        }
+
+        boolean contains(int minute) {
+            return startMinute <= endMinute
+                    ? minute >= startMinute && minute < endMinute
+                    : minute >= startMinute || minute < endMinute;
+        }
+    }
+
+    private final List<Window> windows;
+    private final long defaultRate;
+
+    private RateSchedule(List<Window> windows, long defaultRate) {
+        this.windows = windows;
+        this.defaultRate = defaultRate;
+    }
+
+    /**
+     * @throws IllegalArgumentException Si el texto no sigue ninguno de los formatos
+     */
+    public static RateSchedule parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return UNLIMITED;
+        }
+        if (!spec.contains("=")) {
+            return new RateSchedule(new ArrayList<>(), parseRate(spec));
+        }
+        List<Window> windows = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] rangeAndRate = part.trim().split("=");
+            String[] range = rangeAndRate.length == 2 ? rangeAndRate[0].split("-") : new String[0];
+            if (range.length != 2) {
+                throw new IllegalArgumentException("Invalid rate window: " + part);
+            }
+            windows.add(new Window(parseMinute(range[0]), parseMinute(range[1]), parseRate(rangeAndRate[1])));
+        }
+        return new RateSchedule(windows, 0);
+    }
+
+    /**
+     * @return Bytes por segundo permitidos a esa hora, o 0 si no hay límite
+     */
+    public long rateAt(LocalTime time) {
+        int minute = time.getHour() * 60 + time.getMinute();
+        for (Window window : windows) {
+            if (window.contains(minute)) {
+                return window.rate;
+            }
+        }
+        return defaultRate;
+    }
+
+    private static int parseMinute(String text) {
+        try {
+            LocalTime time = LocalTime.parse(text.trim());
+            return time.getHour() * 60 + time.getMinute();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid time: " + text);
+        }
+    }
+
+    static long parseRate(String text) {
+        String value = text.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (value.endsWith("K")) {
+            unit = 1024;
+        } else if (value.endsWith("M")) {
+            unit = 1024 * 1024;
+        } else if (value.endsWith("G")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Math.round(Double.parseDouble(value) * unit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid rate: " + text);
+        }
+    }
+}
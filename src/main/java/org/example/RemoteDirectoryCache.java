@@ -0,0 +1,81 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directorios remotos que se sabe que existen, para no repetir CWD/MKD por cada archivo subido.
+ * Se rellena con el recorrido remoto de cada pasada y con los MKD propios, y se invalida al borrar.
+ * Las rutas son absolutas y terminan en '/', igual que en {@link RemoteSnapshot}.
+ */
+public class RemoteDirectoryCache {
+
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    // Un cerrojo por directorio en creación: dos subidas al mismo directorio nuevo sólo envían un MKD
+    private final Map<String, Object> creating = new ConcurrentHashMap<>();
+
+    public RemoteDirectoryCache() {
+        known.add("/");
+    }
+
+    /**
+     * Sustituye el contenido por los directorios vistos en un recorrido completo del servidor.
+     */
+    public void refresh(RemoteSnapshot snapshot) {
+        Set<String> dirs = snapshot.getDirectories();
+        known.addAll(dirs);
+        known.retainAll(dirs);
+    }
+
+    public boolean contains(String dir) {
+        return known.contains(dir);
+    }
+
+    public void add(String dir) {
+        known.add(dir);
+    }
+
+    /**
+     * Olvida el directorio y todo lo que cuelga de él.
+     */
+    public void invalidate(String dir) {
+        String prefix = dir.endsWith("/") ? dir : dir + "/";
+        known.removeIf(path -> path.startsWith(prefix));
+        creating.keySet().removeIf(path -> path.startsWith(prefix));
+        known.add("/");
+    }
+
+    /**
+     * Crea los directorios de {@code dir} que falten. Sólo se envían órdenes para los que no están en la caché.
+     *
+     * @param dir Ruta absoluta del directorio, con o sin '/' final
+     * @throws IOException Si un directorio no se puede crear ni existe ya
+     */
+    public void ensure(FTPClient client, String dir) throws IOException {
+        String target = dir.endsWith("/") ? dir : dir + "/";
+        if (known.contains(target)) {
+            return;
+        }
+        for (int i = target.indexOf('/', 1); i > 0; i = target.indexOf('/', i + 1)) {
+            String ancestor = target.substring(0, i + 1);
+            if (known.contains(ancestor)) {
+                continue;
+            }
+            synchronized (creating.computeIfAbsent(ancestor, k -> new Object())) {
+                if (known.contains(ancestor)) {
+                    continue;
+                }
+                String path = ancestor.substring(0, ancestor.length() - 1);
+                // Si MKD falla puede ser porque ya existía (creado fuera de esta caché): se comprueba con CWD
+                if (!client.makeDirectory(path) && !client.changeWorkingDirectory(path)) {
+                    throw new IOException("Unable to create remote directory '" + path + "'.  error='" + client.getReplyString() + "'");
+                }
+                known.add(ancestor);
+            }
+        }
+    }
+}
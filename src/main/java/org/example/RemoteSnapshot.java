@@ -0,0 +1,199 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Recorrido del árbol remoto, uno por pasada. Usa MLSD cuando el servidor lo anuncia (tamaño y fecha exactos)
+ * y LIST en caso contrario. Las rutas siguen el formato de {@link SincronizadorFTP}: absolutas y con '/' final
+ * en los directorios.
+ * <p>
+ * Las entradas no se guardan: se entregan a quien recorre por lotes de {@value #PAGE_SIZE} según se leen de la
+ * conexión de datos (con un {@link StreamingFTPClient}; con otro cliente, según las devuelve commons-net) y
+ * después se descartan. Del recorrido sólo queda el conjunto de directorios, así que un directorio con cientos
+ * de miles de archivos no ocupa más memoria que un lote.
+ */
+public class RemoteSnapshot {
+
+    static final int PAGE_SIZE = 1000;
+    private static final DateTimeFormatter MDTM_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    /**
+     * Tamaño, fecha de modificación y tipo de una entrada remota.
+     */
+    public static class Entry {
+        private final String path;
+        private final long size;
+        // Milisegundos desde 1970, o -1 si el listado no trae fecha
+        private final long modified;
+        private final boolean directory;
+        private final boolean preciseTime;
+
+        Entry(String path, long size, long modified, boolean directory, boolean preciseTime) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.directory = directory;
+            this.preciseTime = preciseTime;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * Indica si la fecha viene de MLSD y tiene precisión de segundos; las de LIST no son comparables.
+         */
+        public boolean hasPreciseTime() {
+            return preciseTime;
+        }
+
+        /**
+         * Fecha en el mismo formato {@code yyyyMMddHHmmss} que devuelve MDTM, o null si no es precisa.
+         */
+        public String getModificationTime() {
+            if (!preciseTime || modified < 0) {
+                return null;
+            }
+            // MLSD da las fechas en UTC, igual que MDTM
+            return MDTM_FORMAT.format(Instant.ofEpochMilli(modified));
+        }
+    }
+
+    private final Set<String> directories = new HashSet<>();
+    private int size;
+    private int commands;
+
+    private RemoteSnapshot() {
+        directories.add("/");
+    }
+
+    /**
+     * Recorre el servidor desde la raíz con un listado por directorio, entrando sólo en los directorios que
+     * acepta {@code descend}; los demás se entregan como entrada de su padre.
+     *
+     * @param visitor Recibe cada lote de entradas mientras la sesión sigue ocupada con el listado, así que no
+     *                puede enviar órdenes por ella ni guardar la lista, que se reutiliza para el lote siguiente
+     * @throws IOException Si falla la conexión o el servidor rechaza o corta el listado de un directorio: un
+     *                     listado a medias no puede tomarse por el contenido del directorio
+     */
+    public static RemoteSnapshot walk(FTPClient client, Predicate<String> descend, Consumer<List<Entry>> visitor) throws IOException {
+        RemoteSnapshot snapshot = new RemoteSnapshot();
+        boolean useMlsd = client.hasFeature("MLST");
+        snapshot.commands++;
+
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push("/");
+        while (!pending.isEmpty()) {
+            String dir = pending.pop();
+            String parent = dir.equals("/") ? "" : dir.substring(0, dir.length() - 1);
+            List<String> subdirs = new ArrayList<>();
+            List<Entry> batch = new ArrayList<>(PAGE_SIZE);
+            Consumer<FTPFile> sink = ftpFile -> {
+                if (ftpFile == null || ftpFile.getName().equals(".") || ftpFile.getName().equals("..")) {
+                    return;
+                }
+                String path = parent + "/" + ftpFile.getName();
+                boolean isDir = ftpFile.isDirectory();
+                if (isDir) {
+                    path += "/";
+                    snapshot.directories.add(path);
+                    if (descend.test(path)) {
+                        subdirs.add(path);
+                    }
+                }
+                Calendar timestamp = ftpFile.getTimestamp();
+                batch.add(new Entry(path, ftpFile.getSize(), timestamp != null ? timestamp.getTimeInMillis() : -1,
+                        isDir, useMlsd));
+                snapshot.size++;
+                if (batch.size() == PAGE_SIZE) {
+                    visitor.accept(batch);
+                    batch.clear();
+                }
+            };
+
+            list(client, dir, useMlsd, sink);
+            snapshot.commands++;
+            if (!batch.isEmpty()) {
+                visitor.accept(batch);
+            }
+            // Los subdirectorios se listan al terminar el padre: la sesión no admite dos listados a la vez
+            for (int i = subdirs.size() - 1; i >= 0; i--) {
+                pending.push(subdirs.get(i));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Lista un directorio entrada a entrada: según llegan con un {@link StreamingFTPClient}, por páginas de
+     * {@value #PAGE_SIZE} con otro cliente.
+     *
+     * @throws IOException Si falla la conexión o el servidor rechaza o no termina bien el listado
+     */
+    static void list(FTPClient client, String dir, boolean mlsd, Consumer<FTPFile> sink) throws IOException {
+        boolean listed;
+        if (client instanceof StreamingFTPClient) {
+            listed = ((StreamingFTPClient) client).list(dir, mlsd, sink);
+        } else {
+            FTPListParseEngine engine = mlsd ? client.initiateMListParsing(dir) : client.initiateListParsing(dir);
+            while (engine.hasNext()) {
+                for (FTPFile ftpFile : engine.getNext(PAGE_SIZE)) {
+                    sink.accept(ftpFile);
+                }
+            }
+            listed = FTPReply.isPositiveCompletion(client.getReplyCode());
+        }
+        if (!listed) {
+            throw new IOException("Unable to list " + dir + " (" + client.getReplyString().trim() + ")");
+        }
+    }
+
+    /**
+     * Indica si el recorrido vio el directorio, aunque no entrara en él.
+     *
+     * @param dir Ruta absoluta con '/' final
+     */
+    public boolean hasDirectory(String dir) {
+        return directories.contains(dir);
+    }
+
+    /**
+     * Todos los directorios vistos, incluida la raíz.
+     */
+    public Set<String> getDirectories() {
+        return Collections.unmodifiableSet(directories);
+    }
+
+    /**
+     * Número de entradas entregadas.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Número de órdenes enviadas al servidor durante el recorrido.
+     */
+    public int getCommandCount() {
+        return commands;
+    }
+}
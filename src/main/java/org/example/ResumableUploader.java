@@ -0,0 +1,368 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Envío de archivos con reanudación y verificación de tamaño.
+ * Una subida interrumpida continúa desde el tamaño que ya tiene el archivo remoto, con REST+STOR si el
+ * servidor anuncia "REST STREAM" y con APPE si no. Los archivos a partir de {@code segmentThreshold} bytes
+ * se pueden partir en trozos enviados en paralelo por otras sesiones libres del pool; esos envíos no se
+ * reanudan, porque el archivo remoto puede quedar con huecos. Sólo se trocea si el servidor escribe encima
+ * tras un REST sin truncar el archivo (ver {@link #restOverwrites}); con los que truncan, como Apache
+ * FtpServer, un trozo posterior borraría lo que ya escribieron los siguientes y el tamaño final seguiría
+ * cuadrando.
+ * <p>
+ * Todos los envíos pasan por el {@link BandwidthLimiter} con la prioridad de la subida. Con un
+ * {@link ContentHasher} configurado, lo que se envía de una pieza desde el principio se hashea al vuelo y queda
+ * en su caché, así que anotar la subida no obliga a leer el archivo otra vez.
+ */
+public class ResumableUploader {
+
+    private final FTPConnectionPool pool;
+    private final Executor segmentExecutor;
+    private final BandwidthLimiter limiter;
+    private final String server;
+    private final int port;
+    private volatile long segmentThreshold;
+    private volatile int maxSegments = 1;
+    // null hasta que se prueba el servidor
+    private volatile Boolean restOverwrites;
+    private volatile ContentHasher hasher;
+
+    /**
+     * @param segmentExecutor Donde se envían los trozos; puede ser el mismo ejecutor acotado que las subidas
+     */
+    public ResumableUploader(FTPConnectionPool pool, Executor segmentExecutor, BandwidthLimiter limiter,
+                             String server, int port) {
+        this.pool = pool;
+        this.segmentExecutor = segmentExecutor;
+        this.limiter = limiter;
+        this.server = server;
+        this.port = port;
+    }
+
+    /**
+     * @param thresholdBytes Tamaño a partir del cual se trocea el archivo; 0 para no trocear nunca
+     * @param segments       Número máximo de trozos simultáneos
+     */
+    public void setSegmentedUploads(long thresholdBytes, int segments) {
+        this.segmentThreshold = thresholdBytes;
+        this.maxSegments = Math.max(1, segments);
+    }
+
+    /**
+     * @param hasher Donde se guardan los hashes calculados al enviar, o null para no calcularlos
+     */
+    public void setHasher(ContentHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    /**
+     * @return true si un archivo de ese tamaño se trocearía; false también si ya se sabe que el servidor
+     * trunca al recibir REST
+     */
+    public boolean isSegmented(long length) {
+        return segmentThreshold > 0 && maxSegments > 1 && length >= segmentThreshold
+                && !Boolean.FALSE.equals(restOverwrites);
+    }
+
+    /**
+     * Sube el archivo y comprueba que el tamaño remoto coincide con el local.
+     *
+     * @param resume   true para continuar desde lo que ya haya en el servidor
+     * @param progress Transferencia a la que se notifican los bytes enviados, o null
+     * @return Hash de los bytes enviados si se envió de una pieza con un {@link ContentHasher} configurado, o null
+     * @throws IOException Si falla la transferencia o el tamaño final no coincide
+     */
+    public byte[] upload(FTPClient client, File file, String ftpPath, boolean resume, Transfer progress,
+                       TransferPriority priority) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        ContentHasher currentHasher = hasher;
+        byte[] hash = null;
+        long offset = 0;
+        if (resume) {
+            long remoteSize = remoteSize(client, ftpPath);
+            if (remoteSize > 0 && remoteSize <= length) {
+                offset = remoteSize;
+                Logger.logMessage("Resuming " + ftpPath + " at byte " + offset + " of " + length);
+            }
+        }
+        if (progress != null) {
+            progress.addBytes(offset);
+        }
+
+        if (offset < length || length == 0) {
+            if (offset == 0 && isSegmented(length) && client.hasFeature("REST", "STREAM")
+                    && restOverwrites(client, ftpPath)) {
+                sendSegmented(client, file, ftpPath, length, progress, priority);
+            } else {
+                hash = send(client, file, ftpPath, offset, length - offset, true, progress, priority,
+                        offset == 0 ? currentHasher : null);
+            }
+        }
+
+        long remoteSize = remoteSize(client, ftpPath);
+        if (remoteSize >= 0 && remoteSize != length) {
+            throw new IOException("Size mismatch after uploading " + ftpPath + " (remote " + remoteSize + ", local " + length + ")");
+        }
+        if (hash != null) {
+            currentHasher.remember(file, length, lastModified, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Sube un flujo de principio a fin, sin reanudación, y comprueba que el tamaño remoto coincide con lo leído.
+     *
+     * @param source Archivo del que sale el flujo; su hash se guarda si se leyó completo
+     * @return Hash de lo enviado con un {@link ContentHasher} configurado, o null
+     * @throws IOException Si falla la transferencia o el tamaño final no coincide
+     */
+    public byte[] upload(FTPClient client, InputStream content, File source, String ftpPath, TransferPriority priority)
+            throws IOException {
+        long length = source.length();
+        long lastModified = source.lastModified();
+        ContentHasher currentHasher = hasher;
+        ContentHasher.HashingInputStream hashing = currentHasher != null ? currentHasher.hashing(content) : null;
+        CountingInputStream in = new CountingInputStream(hashing != null ? hashing : content);
+        try (InputStream throttled = limiter.throttle(in, server, port, priority)) {
+            if (!client.storeFile(ftpPath, throttled)) {
+                throw new IOException("Unable to store " + ftpPath + " (" + client.getReplyString().trim() + ")");
+            }
+        }
+        long remoteSize = remoteSize(client, ftpPath);
+        if (remoteSize >= 0 && remoteSize != in.count) {
+            throw new IOException("Size mismatch after uploading " + ftpPath + " (remote " + remoteSize + ", sent " + in.count + ")");
+        }
+        if (hashing == null) {
+            return null;
+        }
+        if (in.count == length) {
+            currentHasher.remember(source, length, lastModified, hashing.getHash());
+        }
+        return hashing.getHash();
+    }
+
+    /**
+     * Comprueba una vez por servidor, con un archivo de prueba junto a {@code ftpPath}, si REST+STOR escribe
+     * en la posición indicada conservando lo que hay detrás. Si la prueba no se puede completar, no se trocea.
+     *
+     * @throws IOException Si se cae la conexión; el resultado queda sin decidir
+     */
+    private synchronized boolean restOverwrites(FTPClient client, String ftpPath) throws IOException {
+        if (restOverwrites != null) {
+            return restOverwrites;
+        }
+        String probe = ftpPath.substring(0, ftpPath.lastIndexOf('/') + 1) + ".rest-probe";
+        boolean overwrites = false;
+        if (client.storeFile(probe, new ByteArrayInputStream(new byte[]{'0', '1', '2', '3'}))) {
+            client.setRestartOffset(1);
+            overwrites = client.storeFile(probe, new ByteArrayInputStream(new byte[]{'x'}))
+                    && remoteSize(client, probe) == 4;
+            client.deleteFile(probe);
+        }
+        if (!overwrites) {
+            Logger.logMessage("Server truncates on REST, segmented uploads disabled");
+        }
+        restOverwrites = overwrites;
+        return overwrites;
+    }
+
+    /**
+     * @return Tamaño remoto según SIZE, o -1 si no existe o el servidor no lo admite
+     */
+    public static long remoteSize(FTPClient client, String ftpPath) throws IOException {
+        String size = client.getSize(ftpPath);
+        if (size == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(size.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * El primer trozo se envía con STOR normal para crear (y truncar) el archivo; el resto se escribe
+     * con REST en su posición, repartido entre las sesiones del pool que estén libres en ese momento.
+     * Un trozo que ningún hilo del ejecutor ha empezado cuando se le espera lo envía este mismo hilo, así que
+     * una subida nunca se queda esperando a tareas encoladas detrás de ella en un ejecutor lleno.
+     */
+    private void sendSegmented(FTPClient client, File file, String ftpPath, long length, Transfer progress,
+                               TransferPriority priority) throws IOException {
+        long segmentSize = (length + maxSegments - 1) / maxSegments;
+        send(client, file, ftpPath, 0, segmentSize, false, progress, priority, null);
+
+        List<long[]> ownSegments = new ArrayList<>();
+        List<FutureTask<?>> pending = new ArrayList<>();
+        for (long offset = segmentSize; offset < length; offset += segmentSize) {
+            long segmentOffset = offset;
+            long segmentLength = Math.min(segmentSize, length - offset);
+            FTPClient extra = pool.tryBorrow();
+            if (extra == null) {
+                ownSegments.add(new long[]{segmentOffset, segmentLength});
+                continue;
+            }
+            FutureTask<?> segment = new FutureTask<>(() -> {
+                try {
+                    send(extra, file, ftpPath, segmentOffset, segmentLength, true, progress, priority, null);
+                } catch (IOException e) {
+                    pool.invalidate(extra);
+                    throw e;
+                }
+                pool.release(extra);
+                return null;
+            });
+            pending.add(segment);
+            segmentExecutor.execute(segment);
+        }
+        for (long[] segment : ownSegments) {
+            send(client, file, ftpPath, segment[0], segment[1], true, progress, priority, null);
+        }
+
+        IOException failure = null;
+        for (FutureTask<?> segment : pending) {
+            // No hace nada si ya lo empezó otro hilo
+            segment.run();
+            try {
+                segment.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while uploading " + ftpPath);
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof IOException
+                        ? (IOException) e.getCause()
+                        : new IOException(e.getCause());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @param restart Si es false y {@code offset} es 0 se usa STOR simple, que trunca el archivo remoto
+     * @param hasher  Si no es null, se calcula el hash de lo enviado
+     * @return El hash de lo enviado, o null sin {@code hasher}
+     */
+    private byte[] send(FTPClient client, File file, String ftpPath, long offset, long count, boolean restart,
+                        Transfer progress, TransferPriority priority, ContentHasher hasher) throws IOException {
+        InputStream range = new RangeInputStream(file, offset, count, progress);
+        ContentHasher.HashingInputStream hashing = hasher != null ? hasher.hashing(range) : null;
+        try (InputStream in = limiter.throttle(hashing != null ? hashing : range, server, port, priority)) {
+            boolean stored;
+            if (offset == 0) {
+                stored = client.storeFile(ftpPath, in);
+            } else if (restart && client.hasFeature("REST", "STREAM")) {
+                client.setRestartOffset(offset);
+                stored = client.storeFile(ftpPath, in);
+            } else {
+                stored = client.appendFile(ftpPath, in);
+            }
+            if (!stored) {
+                throw new IOException("Unable to store " + ftpPath + " (" + client.getReplyString().trim() + ")");
+            }
+        }
+        return hashing != null ? hashing.getHash() : null;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = in.read(buffer, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Flujo que lee sólo {@code count} bytes de un archivo a partir de {@code offset}.
+     * Si hay una transferencia asociada, le notifica lo leído y corta la lectura al cancelarla.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+        private final Transfer progress;
+
+        RangeInputStream(File file, long offset, long count, Transfer progress) throws IOException {
+            super(new FileInputStream(file));
+            ((FileInputStream) in).getChannel().position(offset);
+            this.remaining = count;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+                report(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(buffer, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+                report(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        private void report(long bytes) throws IOException {
+            if (progress != null) {
+                progress.addBytes(bytes);
+            }
+        }
+    }
+}
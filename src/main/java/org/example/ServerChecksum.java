@@ -0,0 +1,99 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+
+/**
+ * Sumas de comprobación calculadas por el servidor: HASH (draft-bryan-ftp-hash) si aparece en FEAT,
+ * o las extensiones XSHA256/XSHA1/XMD5/XCRC. Permite comparar contenido sin descargar el archivo.
+ * <p>
+ * El algoritmo de HASH se elige con OPTS y el servidor sólo lo recuerda en esa sesión: cada sesión nueva se
+ * prepara con {@link #prepare(FTPClient)}.
+ */
+public class ServerChecksum {
+
+    private final String command;
+    private final String algorithm;
+
+    private ServerChecksum(String command, String algorithm) {
+        this.command = command;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Elige el método más fuerte que anuncia el servidor.
+     *
+     * @return null si el servidor no ofrece ninguno
+     */
+    public static ServerChecksum detect(FTPClient client) throws IOException {
+        if (client.hasFeature("HASH")) {
+            String[] values = client.featureValues("HASH");
+            String offered = values == null ? "" : String.join(";", values).toUpperCase();
+            for (String algorithm : new String[]{"SHA-256", "SHA-1", "MD5", "CRC32"}) {
+                if (offered.contains(algorithm)
+                        && FTPReply.isPositiveCompletion(client.sendCommand("OPTS", "HASH " + algorithm))) {
+                    return new ServerChecksum("HASH", algorithm);
+                }
+            }
+        }
+        if (client.hasFeature("XSHA256")) {
+            return new ServerChecksum("XSHA256", "SHA-256");
+        }
+        if (client.hasFeature("XSHA1")) {
+            return new ServerChecksum("XSHA1", "SHA-1");
+        }
+        if (client.hasFeature("XMD5")) {
+            return new ServerChecksum("XMD5", "MD5");
+        }
+        if (client.hasFeature("XCRC")) {
+            return new ServerChecksum("XCRC", "CRC32");
+        }
+        return null;
+    }
+
+    /**
+     * Vuelve a elegir el algoritmo en una sesión nueva. Si el servidor no lo acepta, {@link #checksum} no
+     * devuelve nada en esa sesión y los archivos se suben.
+     */
+    public void prepare(FTPClient client) throws IOException {
+        if (command.equals("HASH") && !FTPReply.isPositiveCompletion(client.sendCommand("OPTS", "HASH " + algorithm))) {
+            Logger.logError("Server rejected OPTS HASH " + algorithm + " (" + client.getReplyString().trim() + ")");
+        }
+    }
+
+    /**
+     * Algoritmo que hay que usar en local para que los valores sean comparables.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return Hash en hexadecimal y minúsculas, o null si el servidor no lo pudo calcular o lo calculó con
+     * otro algoritmo
+     */
+    public String checksum(FTPClient client, String ftpPath) throws IOException {
+        int reply = client.sendCommand(command, ftpPath);
+        if (!FTPReply.isPositiveCompletion(reply)) {
+            return null;
+        }
+        // HASH: "213 SHA-256 0-1234 <hex> <ruta>"; X*: "250 <hex>"
+        String[] tokens = client.getReplyString().trim().split("\\s+");
+        int index = command.equals("HASH") ? 3 : 1;
+        if (tokens.length <= index) {
+            return null;
+        }
+        if (command.equals("HASH") && !tokens[1].equalsIgnoreCase(algorithm)) {
+            // Sesión sin el OPTS: el servidor responde con su algoritmo por defecto
+            return null;
+        }
+        String hex = tokens[index].toLowerCase();
+        if (algorithm.equals("CRC32")) {
+            // Algunos servidores no rellenan con ceros a la izquierda
+            hex = "0".repeat(Math.max(0, 8 - hex.length())) + hex;
+        }
+        return hex;
+    }
+}
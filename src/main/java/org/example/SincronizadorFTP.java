@@ -1,21 +1,29 @@
 package org.example;
 
-import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
-import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.text.SimpleDateFormat;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 /**
  * Clase mejorada del sistema de sincronización con verificación de propiedad, tiempo de vida y copias de seguridad.
@@ -23,177 +31,1088 @@ import java.util.concurrent.TimeUnit;
 public class SincronizadorFTP {
 
     private File syncedDir;
-    private FTPClient ftpClient;
-    ScheduledExecutorService service;
+    private ConnectionSupervisor supervisor;
+    private FTPConnectionPool connectionPool;
+    private int workers;
+    private final SyncRuntime runtime;
+    private AdaptiveScheduler scheduler;
+    private final SubtreeSchedule subtreeSchedule = new SubtreeSchedule(SUBTREE_MAX_PERIOD);
+    private ExecutorService uploadExecutor;
+    private DirectoryWatcher watcher;
+    private volatile boolean dryRun;
 
-    private static final String METADATA_FILE = "metadata.txt";
-    private static final String LIFETIME_METADATA_FILE = "lifetime_metadata.txt";
-    private static final String BACKUP_DIR_NAME = "D:\\FTP2";
+    private static final String LOCAL_INDEX_FILE = "local_index.bin";
+    // Estado de los destinos secundarios de MirrorSync, uno por subdirectorio
+    static final String MIRROR_STATE_DIR = ".mirror";
+    private static final Set<String> INTERNAL_FILES = Set.of(
+            LOCAL_INDEX_FILE, MIRROR_STATE_DIR, LOCAL_INDEX_FILE + ".tmp",
+            MetadataJournal.JOURNAL_FILE, MetadataJournal.SNAPSHOT_FILE, MetadataJournal.SNAPSHOT_FILE + ".tmp",
+            "metadata.txt", "lifetime_metadata.txt", "metadata.txt.migrated", "lifetime_metadata.txt.migrated");
+    private static final String BACKUP_DIR_NAME = System.getProperty("backup.dir", "D:\\FTP2");
+    private static final int BACKUP_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int MAX_INTERVAL_FACTOR = 8;
+    private static final int SUBTREE_MAX_PERIOD = 4;
+    private static final long KEEPALIVE_MILLIS = 60000;
+    private static final long WATCH_QUIET_MILLIS = 300;
+    private static final long WATCH_MAX_DELAY_MILLIS = 1000;
+    private static final long EXPIRY_BATCH_WINDOW_MILLIS = 1000;
+    private static final long RESUMABLE_MIN_BYTES = 1024 * 1024;
+    // MDTM y MFMT trabajan en UTC (RFC 3659); con la hora local cada cambio de horario volvía a subirlo todo
+    private static final DateTimeFormatter FTP_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
 
-    private Map<String, String> fileOwners = new HashMap<>();
-    private Map<String, Long> fileLifetimes = new HashMap<>();
+    private Map<String, String> fileOwners = new ConcurrentHashMap<>();
+    private Map<String, Long> fileLifetimes = new ConcurrentHashMap<>();
+    private MetadataJournal metadata;
+    private ExpiryScheduler expiryScheduler;
+    private ExecutorService segmentExecutor;
+    private ResumableUploader uploader;
+    private volatile ContentHasher hasher;
+    private ServerChecksum serverChecksum;
+    private volatile BackupStore backupStore;
+    private final RemoteDirectoryCache remoteDirs = new RemoteDirectoryCache();
+    // Rutas de un delete() en curso, que las pasadas no tocan; los directorios con '/' final
+    private final Set<String> deleting = ConcurrentHashMap.newKeySet();
+    private LocalIndex localIndex;
+    private final SyncMetrics metrics;
+    // Inicio de la pasada de MirrorSync en curso, entre planMirrorPass y executeMirrorPlan
+    private long[] mirrorPassStart;
 
     /**
      *
      * @throws IOException Si el directorio no es válido o no es posible realizar conexión
      */
     public SincronizadorFTP(File syncedDir, String ftpServer, int ftpPort, String ftpUser, String ftpPassword) throws IOException {
+        this(syncedDir, ftpServer, ftpPort, ftpUser, ftpPassword, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param workers Número de subidas simultáneas durante una pasada; también es el tamaño del pool de conexiones
+     * @throws IOException Si el directorio no es válido o no es posible realizar conexión
+     */
+    public SincronizadorFTP(File syncedDir, String ftpServer, int ftpPort, String ftpUser, String ftpPassword, int workers) throws IOException {
+        this(syncedDir, ftpServer, ftpPort, ftpUser, ftpPassword, workers, null);
+    }
+
+    /**
+     * @param runtime Hilos y cupo de conexiones compartidos con otras raíces (modo demonio), o null para usar
+     *                recursos propios
+     * @throws IOException Si el directorio no es válido o no es posible realizar conexión
+     */
+    public SincronizadorFTP(File syncedDir, String ftpServer, int ftpPort, String ftpUser, String ftpPassword, int workers,
+                            SyncRuntime runtime) throws IOException {
+        this(syncedDir, syncedDir, ftpServer, ftpPort, ftpUser, ftpPassword, workers, runtime);
+    }
+
+    /**
+     * @param stateDir Directorio de los metadatos y el índice local; distinto de {@code syncedDir} cuando
+     *                 varios destinos sincronizan el mismo árbol ({@link MirrorSync})
+     * @throws IOException Si el directorio no es válido o no es posible realizar conexión
+     */
+    SincronizadorFTP(File syncedDir, File stateDir, String ftpServer, int ftpPort, String ftpUser, String ftpPassword,
+                     int workers, SyncRuntime runtime) throws IOException {
         if (syncedDir == null || !syncedDir.exists() || !syncedDir.isDirectory()) {
             throw new IOException("Invalid directory name, could not sync");
         }
+        if (!stateDir.isDirectory() && !stateDir.mkdirs()) {
+            throw new IOException("Unable to create state directory " + stateDir);
+        }
         this.syncedDir = syncedDir;
+        this.workers = workers;
+        this.runtime = runtime;
         fptConnect(ftpServer, ftpPort, ftpUser, ftpPassword);
-        loadMetadata();
-        loadLifetimeMetadata();
+        metrics = new SyncMetrics(syncedDir.getAbsolutePath() + " -> " + ftpServer + ":" + ftpPort);
+        metadata = new MetadataJournal(stateDir, fileOwners, fileLifetimes);
+        // En modo demonio el fsync del diario, los plazos, las copias y los trozos usan los hilos del runtime
+        if (runtime != null) {
+            metadata.open(runtime.getPassExecutor());
+        } else {
+            metadata.open();
+        }
+        expiryScheduler = new ExpiryScheduler(this::expireFiles, EXPIRY_BATCH_WINDOW_MILLIS);
+        fileLifetimes.forEach(expiryScheduler::schedule);
+        if (runtime != null) {
+            expiryScheduler.start(runtime.getPassExecutor());
+        } else {
+            expiryScheduler.start();
+        }
+        localIndex = new LocalIndex(new File(stateDir, LOCAL_INDEX_FILE));
+        localIndex.load();
+        backupStore = new BackupStore(new File(BACKUP_DIR_NAME), BACKUP_QUEUE_CAPACITY, metrics,
+                runtime != null ? runtime.getUploadExecutor() : null);
+        metrics.setQueueGauges(() -> uploadExecutor instanceof ThreadPoolExecutor
+                        ? ((ThreadPoolExecutor) uploadExecutor).getQueue().size() : 0,
+                () -> {
+                    BackupStore backups = backupStore;
+                    return backups != null ? backups.getPending() : 0;
+                });
+        metrics.register();
+    }
+
+    /**
+     * Métricas de la raíz, también publicadas por JMX. Con el modo demonio la cola de subidas es la compartida.
+     */
+    public SyncMetrics getMetrics() {
+        return metrics;
     }
 
     private void fptConnect(String server, int port, String user, String password) throws IOException {
-        ftpClient = new FTPClient();
-        ftpClient.connect(server, port);
-        int replyCode = ftpClient.getReplyCode();
+        connectionPool = new FTPConnectionPool(server, port, user, password, workers,
+                runtime != null ? runtime.budgetFor(server, port) : null);
+        // En modo demonio la sesión principal se abre en la primera pasada, no todas las raíces a la vez al arrancar
+        supervisor = new ConnectionSupervisor(connectionPool, runtime != null);
+        segmentExecutor = runtime != null ? runtime.getUploadExecutor() : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "upload-segment");
+            t.setDaemon(true);
+            return t;
+        });
+        uploader = new ResumableUploader(connectionPool, segmentExecutor, BandwidthLimiter.getDefault(), server, port);
+    }
 
-        if (!FTPReply.isPositiveCompletion(replyCode)) {
-            ftpClient.disconnect();
-            throw new IOException("Unable to establish connection");
+    /**
+     * Modo de verificación de contenido: cuando la fecha remota no coincide pero el tamaño sí, se calcula el
+     * hash local (en paralelo) y se compara con el del servidor si admite HASH, XSHA256, XMD5 o XCRC, o con el
+     * guardado en el índice local en la última subida. Si coincide, no se vuelve a subir.
+     *
+     * @throws IOException Si falla la consulta de capacidades al servidor
+     */
+    public void setContentVerification(boolean enabled) throws IOException {
+        if (hasher != null) {
+            hasher.shutdown();
+            hasher = null;
+            uploader.setHasher(null);
         }
-        if (!ftpClient.login(user, password)) {
-            throw new IOException("FTP login failed");
+        supervisor.setSessionSetup(null);
+        if (!enabled) {
+            return;
+        }
+        if (!supervisor.tryConnect()) {
+            throw new IOException("Server unavailable");
+        }
+        serverChecksum = ServerChecksum.detect(supervisor.client());
+        if (serverChecksum != null) {
+            // Las reconexiones y el modo demonio abren sesiones nuevas que no conocen el OPTS de detect
+            supervisor.setSessionSetup(serverChecksum::prepare);
+        }
+        String algorithm = serverChecksum != null ? serverChecksum.getAlgorithm() : "SHA-256";
+        hasher = runtime != null
+                ? new ContentHasher(algorithm, runtime.getUploadExecutor())
+                : new ContentHasher(algorithm, Runtime.getRuntime().availableProcessors());
+        uploader.setHasher(hasher);
+        Logger.logMessage("Content verification enabled (" + algorithm + ", "
+                + (serverChecksum != null ? "server checksums" : "stored hashes") + ")");
+    }
+
+    /**
+     * Cambia el directorio de las copias de seguridad (por defecto {@code backup.dir} o D:\FTP2).
+     * Con null dejan de hacerse copias.
+     */
+    public void setBackupDir(File dir) {
+        BackupStore previous = backupStore;
+        backupStore = dir != null ? new BackupStore(dir, BACKUP_QUEUE_CAPACITY, metrics,
+                runtime != null ? runtime.getUploadExecutor() : null) : null;
+        if (previous != null) {
+            previous.close();
         }
+    }
 
-        ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+    /**
+     * Activa el envío troceado: los archivos de al menos {@code thresholdBytes} se parten en hasta
+     * {@code segments} trozos que se suben en paralelo por las sesiones libres del pool.
+     */
+    public void setSegmentedUploads(long thresholdBytes, int segments) {
+        uploader.setSegmentedUploads(thresholdBytes, segments);
     }
 
+    /**
+     * Sincronización periódica con intervalo adaptable entre {@code interval} y {@code interval * 8} segundos.
+     */
     public void startSync(int interval) {
+        startSync(interval, interval * MAX_INTERVAL_FACTOR);
+    }
+
+    /**
+     * Sincronización periódica: el intervalo baja hacia {@code minInterval} mientras haya cambios y sube hacia
+     * {@code maxInterval} cuando no los hay (ver {@link AdaptiveScheduler}). Los subárboles sin cambios se
+     * revisan cada vez menos, según {@link SubtreeSchedule}.
+     */
+    public void startSync(int minInterval, int maxInterval) {
         Logger.logMessage("Connection established");
-        service = Executors.newSingleThreadScheduledExecutor();
-        service.scheduleAtFixedRate(() -> mainLoop(), interval, interval, TimeUnit.SECONDS);
+        long minMillis = TimeUnit.SECONDS.toMillis(minInterval);
+        long maxMillis = TimeUnit.SECONDS.toMillis(maxInterval);
+        if (runtime != null) {
+            // Sin keep-alive: entre pasadas la sesión se cierra (ver scheduledPass) y la primera pasada se reparte
+            // al azar dentro del intervalo para que cientos de raíces no arranquen a la vez
+            supervisor.suspend();
+            uploadExecutor();
+            scheduler = new AdaptiveScheduler(runtime.getPassExecutor(), this::scheduledPass, minMillis, maxMillis);
+            scheduler.start(ThreadLocalRandom.current().nextLong(minMillis));
+            return;
+        }
+        uploadExecutor();
+        scheduler = new AdaptiveScheduler("sync-pass", this::scheduledPass, minMillis, maxMillis);
+        supervisor.startKeepAlive(KEEPALIVE_MILLIS, scheduler::execute);
+        scheduler.start(minMillis);
+    }
+
+    /**
+     * Modo vigilancia: los cambios locales se suben en cuanto el sistema de archivos los notifica.
+     * La pasada completa se mantiene cada {@code reconcileInterval} segundos como red de seguridad,
+     * y también se lanza si se pierden eventos.
+     *
+     * @throws IOException Si no se puede registrar el directorio en el WatchService
+     */
+    public void startWatch(int reconcileInterval) throws IOException {
+        Logger.logMessage("Connection established");
+        long reconcileMillis = TimeUnit.SECONDS.toMillis(reconcileInterval);
+        BooleanSupplier reconcile = () -> {
+            mainLoop();
+            return false;
+        };
+        uploadExecutor();
+        if (runtime != null) {
+            scheduler = new AdaptiveScheduler(runtime.getPassExecutor(), reconcile, reconcileMillis, reconcileMillis);
+        } else {
+            scheduler = new AdaptiveScheduler("sync-pass", reconcile, reconcileMillis, reconcileMillis);
+        }
+        // Los cambios notificados se aplican en el hilo de las pasadas para que nunca se solapen con ellas
+        watcher = new DirectoryWatcher(syncedDir.toPath(), WATCH_QUIET_MILLIS, WATCH_MAX_DELAY_MILLIS,
+                changes -> scheduler.execute(() -> syncChanges(changes)),
+                scheduler::requestPass);
+        watcher.start();
+        supervisor.startKeepAlive(KEEPALIVE_MILLIS, scheduler::execute);
+        scheduler.start(0);
     }
 
     public void stopSync(){
-        service.shutdown();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                Logger.logError("Unable to stop directory watcher (" + e.getMessage() + ")");
+            }
+        }
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        if (runtime == null && uploadExecutor != null) {
+            uploadExecutor.shutdown();
+        }
+        expiryScheduler.close();
+        if (runtime == null) {
+            segmentExecutor.shutdown();
+        }
+        if (hasher != null) {
+            hasher.shutdown();
+        }
+        if (backupStore != null) {
+            backupStore.close();
+        }
+        supervisor.close();
+        connectionPool.close();
+        try {
+            metadata.close();
+        } catch (IOException e) {
+            Logger.logError("Unable to close metadata journal (" + e.getMessage() + ")");
+        }
+        metrics.unregister();
+        Logger.flush();
+    }
+
+    /**
+     * Si está activo, cada pasada calcula y muestra su plan pero no modifica el servidor.
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Calcula el plan de una pasada completa sin ejecutarlo, para revisar qué haría la sincronización.
+     *
+     * @throws IOException Si no se puede listar el servidor
+     */
+    public SyncPlan planPass() throws IOException {
+        if (!supervisor.tryConnect()) {
+            throw new IOException("Server unavailable");
+        }
+        return planPass(scanLocalTree(), dir -> true, false);
+    }
+
+    /**
+     * Prepara la raíz como destino de {@link MirrorSync}, que decide cuándo hay pasada.
+     */
+    void startMirror() {
+        Logger.logMessage("Connection established");
+        uploadExecutor();
+    }
+
+    /**
+     * Primera mitad de una pasada de {@link MirrorSync}: lista el servidor y lo compara con el árbol local
+     * ya recorrido. Si el servidor no responde se intenta conectar una sola vez, sin esperas.
+     *
+     * @throws IOException Si el servidor no está disponible o no se puede listar
+     */
+    SyncPlan planMirrorPass(Map<String, File> localTree) throws IOException {
+        mirrorPassStart = metrics.passStarted();
+        if (!supervisor.tryConnect()) {
+            throw new IOException("Server unavailable");
+        }
+        SyncPlan plan = planPass(localTree, dir -> true, true);
+        supervisor.markActive();
+        return plan;
+    }
+
+    /**
+     * Segunda mitad: ejecuta el plan. Los archivos con flujo en {@code sources} se suben desde él;
+     * el resto se leen del disco.
+     *
+     * @return true si no ha quedado nada pendiente
+     */
+    boolean executeMirrorPlan(SyncPlan plan, Map<File, InputStream> sources, Map<String, File> localTree) {
+        SyncPlan remaining = executePlan(plan, sources);
+        if (!remaining.isEmpty() && !supervisor.isAlive() && supervisor.tryConnect()) {
+            remaining = executePlan(remaining, Collections.emptyMap());
+        }
+        localIndex.removeIf(path -> !localTree.containsKey(path));
+        saveLocalIndex();
+        supervisor.markActive();
+        metrics.passFinished(mirrorPassStart);
+        return remaining.isEmpty();
+    }
+
+    /**
+     * Ejecuta una pasada completa en el hilo que llama, sin planificador. Para herramientas y pruebas de
+     * rendimiento; no debe mezclarse con {@link #startSync} ni {@link #startWatch}.
+     *
+     * @return El plan aplicado, o null si no se pudo listar el servidor
+     */
+    public SyncPlan syncNow() {
+        uploadExecutor();
+        return runPass(Collections.emptySet());
+    }
+
+    /**
+     * Ejecutor de las subidas y de los borrados masivos: el compartido del runtime, o uno propio que se crea
+     * la primera vez que hace falta y se cierra en {@link #stopSync()}.
+     */
+    private synchronized ExecutorService uploadExecutor() {
+        if (uploadExecutor == null) {
+            uploadExecutor = runtime != null ? runtime.getUploadExecutor() : Executors.newFixedThreadPool(workers);
+        }
+        return uploadExecutor;
     }
 
     private void mainLoop() {
-        List<String> localFiles = new ArrayList<>();
-        localFiles.clear();
-        analyzeLocalDir(syncedDir, localFiles);
-        cleanRemoteDir("/", localFiles);
+        runPass(Collections.emptySet());
+    }
 
-        try {
-            if (!ftpClient.sendNoOp()) {
-                stopSync();
-                Logger.logError("Connection lost");
-                System.err.println("Connection lost");
+    /**
+     * Pasada del modo periódico: deja fuera los subárboles que {@link SubtreeSchedule} da por fríos
+     * y le devuelve en cuáles ha habido cambios.
+     *
+     * @return true si la pasada ha encontrado algo que hacer
+     */
+    private boolean scheduledPass() {
+        List<String> subtrees = new ArrayList<>();
+        File[] children = syncedDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory() && !isInternalFile(child)) {
+                    subtrees.add(toFtpPath(child));
+                }
             }
-        } catch (IOException e) {
-            stopSync();
-            Logger.logError("Connection lost (" + e.getMessage() + ")");
-            System.err.println("Connection lost");
         }
+        Set<String> skipped = subtreeSchedule.skipped(subtrees);
+        SyncPlan plan = runPass(skipped);
+        if (runtime != null) {
+            supervisor.suspend();
+        }
+        if (plan == null) {
+            return false;
+        }
+
+        Set<String> changed = new HashSet<>();
+        for (SyncPlan.Type type : SyncPlan.Type.values()) {
+            for (SyncPlan.Action action : plan.get(type)) {
+                changed.add(SubtreeSchedule.subtreeOf(action.getPath()));
+            }
+        }
+        subtrees.removeAll(skipped);
+        subtreeSchedule.record(subtrees, changed);
+        return !plan.isEmpty();
     }
 
-    private void analyzeLocalDir(File dir, List<String> localFiles) {
-        File[] children = dir.listFiles();
-        for (File child : children) {
-            localFiles.add(toFtpPath(child));
-            if (child.isDirectory()) {
-                analyzeLocalDir(child, localFiles);
+    /**
+     * @param skipped Subárboles de primer nivel que no se recorren en esta pasada
+     * @return El plan calculado, o null si no se pudo listar el servidor
+     */
+    private SyncPlan runPass(Set<String> skipped) {
+        long[] passStart = metrics.passStarted();
+        if (!supervisor.ensureConnected()) {
+            return null;
+        }
+        Map<String, File> localTree = scanLocalTree(skipped);
+        SyncPlan plan = null;
+        // Si la conexión se cae durante el listado, se reconecta y se planifica una vez más desde el principio
+        for (int attempt = 0; plan == null && attempt < 2; attempt++) {
+            try {
+                plan = planPass(localTree, dir -> !skipped.contains(dir), skipped.isEmpty());
+            } catch (IOException e) {
+                Logger.logError("Unable to list remote directory (" + e.getMessage() + ")");
+                if (supervisor.isAlive() || !supervisor.reconnect()) {
+                    break;
+                }
+            }
+        }
+
+        if (plan != null) {
+            if (dryRun) {
+                Logger.logMessage("Dry run plan: " + plan.summary());
+                System.out.println(plan);
             } else {
-                try {
-                    if (!existsOnFtp(child)) {
-                        upload(child, "user", 0);
+                SyncPlan remaining = executePlan(plan, Collections.emptyMap());
+                // Una caída a mitad de pasada no obliga a empezar de nuevo: tras reconectar se sigue con lo pendiente
+                while (!remaining.isEmpty() && !supervisor.isAlive()) {
+                    Logger.logError("Connection lost during pass, " + remaining.size() + " actions pending");
+                    if (!supervisor.reconnect()) {
+                        break;
                     }
-                } catch (IOException e) {
-                    Logger.logError("Unable to upload " + child + "(" + e.getMessage() + ")");
+                    remaining = executePlan(remaining, Collections.emptyMap());
                 }
+                localIndex.removeIf(path -> !localTree.containsKey(path) && !skipped.contains(SubtreeSchedule.subtreeOf(path)));
+                saveLocalIndex();
+            }
+        }
+
+        supervisor.markActive();
+        metrics.passFinished(passStart);
+        return plan;
+    }
+
+    private void saveLocalIndex() {
+        long start = System.nanoTime();
+        try {
+            localIndex.save();
+            metrics.record(SyncMetrics.Phase.METADATA, start);
+        } catch (IOException e) {
+            metrics.error(SyncMetrics.Phase.METADATA);
+            Logger.logError("Unable to save local index (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Árbol local indexado por ruta remota; los directorios llevan '/' final.
+     */
+    Map<String, File> scanLocalTree() {
+        return scanLocalTree(Collections.emptySet());
+    }
+
+    /**
+     * @param skipped Subárboles que se anotan pero en los que no se entra
+     */
+    private Map<String, File> scanLocalTree(Set<String> skipped) {
+        long start = System.nanoTime();
+        Map<String, File> localTree = new LinkedHashMap<>();
+        analyzeLocalDir(syncedDir, localTree, skipped);
+        metrics.record(SyncMetrics.Phase.SCAN, start);
+        return localTree;
+    }
+
+    private void analyzeLocalDir(File dir, Map<String, File> localTree, Set<String> skipped) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (isInternalFile(child)) {
+                continue;
+            }
+            String ftpPath = toFtpPath(child);
+            localTree.put(ftpPath, child);
+            if (child.isDirectory() && !skipped.contains(ftpPath)) {
+                analyzeLocalDir(child, localTree, skipped);
             }
         }
     }
 
-    private void cleanRemoteDir(String parent, List<String> localFiles) {
+    /**
+     * Recorre el servidor y lo compara con el árbol local a la vez: cada lote de entradas remotas se cruza con el
+     * árbol local en cuanto llega de la conexión de datos (búsquedas en tablas hash, sin enviar nada) y se descarta,
+     * así que en memoria sólo quedan el árbol local, los directorios remotos y el plan. Lo que necesita la sesión,
+     * ocupada mientras se lista, se resuelve al terminar: el MDTM de los archivos cuyo listado no trae fecha
+     * precisa y la verificación de contenido.
+     *
+     * @param refreshDirs Si el recorrido es completo y sustituye la caché de directorios remotos
+     * @throws IOException Si falla la conexión durante el listado
+     */
+    private SyncPlan planPass(Map<String, File> localTree, Predicate<String> descend, boolean refreshDirs) throws IOException {
+        long start = System.nanoTime();
+        SyncPlan plan = new SyncPlan();
+        Set<String> upToDate = new HashSet<>();
+        Map<String, File> toCheck = new LinkedHashMap<>();
+        Map<String, File> toVerify = new LinkedHashMap<>();
+        RemoteSnapshot remote;
         try {
-            ftpClient.changeWorkingDirectory(parent);
-            FTPFile[] ftpFiles = ftpClient.listFiles();
-            if (parent.equals("/")) {
-                parent = "";
-            }
-            long currentTime = System.currentTimeMillis();
-            for (FTPFile ftpFile : ftpFiles) {
-                String ftpFilePath = parent + "/" + ftpFile.getName();
-                boolean isDir = ftpFile.isDirectory();
-                if (isDir) {
-                    ftpFilePath += "/";
+            remote = RemoteSnapshot.walk(supervisor.client(), descend.and(dir -> !isBeingDeleted(dir)),
+                    batch -> reconcile(batch, localTree, plan, upToDate, toCheck, toVerify));
+        } catch (IOException e) {
+            metrics.error(SyncMetrics.Phase.LIST);
+            throw e;
+        }
+        metrics.record(SyncMetrics.Phase.LIST, start);
+        if (refreshDirs) {
+            remoteDirs.refresh(remote);
+        }
+
+        start = System.nanoTime();
+        Set<String> plannedDirs = new HashSet<>();
+        for (Map.Entry<String, File> local : localTree.entrySet()) {
+            String ftpPath = local.getKey();
+            if (!ftpPath.endsWith("/") && !upToDate.contains(ftpPath) && !toCheck.containsKey(ftpPath)
+                    && !toVerify.containsKey(ftpPath) && !isBeingDeleted(ftpPath)) {
+                planUpload(plan, plannedDirs, ftpPath, local.getValue(), remote);
+            }
+        }
+        for (Map.Entry<String, File> candidate : toCheck.entrySet()) {
+            String ftpPath = candidate.getKey();
+            File file = candidate.getValue();
+            try {
+                String mdtm = supervisor.client().getModificationTime(ftpPath);
+                if (mdtm != null && mdtm.substring(0, 14).equals(timeStampToString(file.lastModified()))) {
+                    continue;
                 }
-                if (fileLifetimes.containsKey(ftpFilePath) && fileLifetimes.get(ftpFilePath) < currentTime) {
-                    ftpClient.changeWorkingDirectory("/");
-                    if (!isDir && ftpClient.deleteFile(ftpFilePath)) {
-                        Logger.logMessage("Expired file " + ftpFilePath + " deleted");
-                        fileLifetimes.remove(ftpFilePath);
-                        saveLifetimeMetadata();
-                    }
-                    if (isDir) {
-                        cleanRemoteDir(parent + "/" + ftpFile.getName(), localFiles);
-                        ftpClient.changeWorkingDirectory("/");
-                        ftpClient.removeDirectory(ftpFilePath);
-                    }
-                } else if (!localFiles.contains(ftpFilePath) && !fileOwners.getOrDefault(ftpFilePath, "").equals("user")) {
-                    ftpClient.changeWorkingDirectory("/");
-                    if (!isDir && ftpClient.deleteFile(ftpFilePath)) {
-                        Logger.logMessage("Remote file " + ftpFilePath + " deleted");
+                if (hasher != null) {
+                    toVerify.put(ftpPath, file);
+                } else {
+                    planUpload(plan, plannedDirs, ftpPath, file, remote);
+                }
+            } catch (IOException e) {
+                metrics.error(SyncMetrics.Phase.CHECK);
+                Logger.logError("Unable to upload " + file + "(" + e.getMessage() + ")");
+            }
+        }
+        if (!toVerify.isEmpty()) {
+            verifyContent(toVerify, plan, plannedDirs, remote);
+        }
+        metrics.record(SyncMetrics.Phase.CHECK, start);
+        return plan;
+    }
+
+    /**
+     * Cruza un lote de entradas remotas con el árbol local. Sobran las que ya no existen en local, salvo las
+     * subidas por la propia sincronización (propietario "user"); las caducadas las borra el
+     * {@link ExpiryScheduler}. Los archivos que coinciden en tamaño y fecha quedan en {@code upToDate}; los de
+     * igual tamaño cuya fecha hay que pedir con MDTM, en {@code toCheck}, y los de fecha distinta que se pueden
+     * decidir por contenido, en {@code toVerify}. El resto de archivos locales se suben.
+     */
+    private void reconcile(List<RemoteSnapshot.Entry> batch, Map<String, File> localTree, SyncPlan plan, Set<String> upToDate,
+                           Map<String, File> toCheck, Map<String, File> toVerify) {
+        for (RemoteSnapshot.Entry entry : batch) {
+            String ftpPath = entry.getPath();
+            if (isBeingDeleted(ftpPath)) {
+                continue;
+            }
+            File file = localTree.get(ftpPath);
+            if (file == null) {
+                if (!fileOwners.getOrDefault(ftpPath, "").equals("user")) {
+                    plan.add(entry.isDirectory() ? SyncPlan.Type.RMDIR : SyncPlan.Type.DELETE, ftpPath, null);
+                }
+            } else if (!entry.isDirectory()) {
+                if (localIndex.isUnchanged(ftpPath, file)) {
+                    // Misma firma que en la última subida: no hace falta preguntar al servidor
+                    upToDate.add(ftpPath);
+                } else if (entry.getSize() < 0 || entry.getSize() == file.length()) {
+                    // Una subida cortada deja un archivo más pequeño; la fecha sola no lo detecta
+                    String serverLastModified = entry.getModificationTime();
+                    if (serverLastModified == null) {
+                        toCheck.put(ftpPath, file);
+                    } else if (serverLastModified.equals(timeStampToString(file.lastModified()))) {
+                        upToDate.add(ftpPath);
+                    } else if (hasher != null && entry.getSize() == file.length()) {
+                        toVerify.put(ftpPath, file);
                     }
-                    if (isDir) {
-                        cleanRemoteDir(parent + "/" + ftpFile.getName(), localFiles);
-                        ftpClient.changeWorkingDirectory("/");
-                        ftpClient.removeDirectory(ftpFilePath);
+                }
+            }
+        }
+    }
+
+    private boolean isBeingDeleted(String ftpPath) {
+        if (deleting.isEmpty()) {
+            return false;
+        }
+        for (String path : deleting) {
+            if (ftpPath.equals(path) || path.endsWith("/") && ftpPath.startsWith(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void planUpload(SyncPlan plan, Set<String> plannedDirs, String ftpPath, File file, RemoteSnapshot remote) {
+        for (int i = ftpPath.indexOf('/', 1); i > 0; i = ftpPath.indexOf('/', i + 1)) {
+            String dir = ftpPath.substring(0, i + 1);
+            if (!remote.hasDirectory(dir) && plannedDirs.add(dir)) {
+                plan.add(SyncPlan.Type.MKDIR, dir, null);
+            }
+        }
+        plan.add(SyncPlan.Type.UPLOAD, ftpPath, file);
+    }
+
+    /**
+     * Decide por contenido los archivos cuya fecha no coincide pero el tamaño sí. Los hashes locales se
+     * calculan todos a la vez en el pool del {@link ContentHasher}. Para los que coinciden se planifica un
+     * {@link SyncPlan.Type#TOUCH}, que corrige la fecha remota y los anota en el índice al ejecutar el plan,
+     * así que planificar (o un dry run) no modifica nada.
+     */
+    private void verifyContent(Map<String, File> toVerify, SyncPlan plan, Set<String> plannedDirs, RemoteSnapshot remote) {
+        ContentHasher currentHasher = hasher;
+        for (Map.Entry<String, File> candidate : toVerify.entrySet()) {
+            LocalIndex.Entry indexed = localIndex.get(candidate.getKey());
+            if (indexed != null && indexed.getHash() != null && indexed.matches(candidate.getValue())) {
+                currentHasher.remember(candidate.getValue(), indexed.getSize(), indexed.getLastModified(), indexed.getHash());
+            }
+        }
+        Map<File, byte[]> localHashes = currentHasher.hashAll(toVerify.values());
+
+        for (Map.Entry<String, File> candidate : toVerify.entrySet()) {
+            String ftpPath = candidate.getKey();
+            File file = candidate.getValue();
+            byte[] localHash = localHashes.get(file);
+            boolean same = false;
+            try {
+                if (localHash != null) {
+                    if (serverChecksum != null) {
+                        same = ContentHasher.toHex(localHash).equals(serverChecksum.checksum(supervisor.client(), ftpPath));
+                    } else {
+                        LocalIndex.Entry indexed = localIndex.get(ftpPath);
+                        same = indexed != null && indexed.getHash() != null && Arrays.equals(indexed.getHash(), localHash);
                     }
-                } else if (isDir) {
-                    cleanRemoteDir(parent + "/" + ftpFile.getName(), localFiles);
                 }
+            } catch (IOException e) {
+                Logger.logError("Unable to verify " + ftpPath + " (" + e.getMessage() + ")");
+            }
+            if (same) {
+                plan.add(SyncPlan.Type.TOUCH, ftpPath, file, localHash);
+            } else {
+                planUpload(plan, plannedDirs, ftpPath, file, remote);
+            }
+        }
+    }
+
+    /**
+     * Borra un lote de archivos caducados con una sola sesión del pool. Se llama desde el hilo del
+     * {@link ExpiryScheduler}. El plazo sólo se olvida si el archivo se borró o ya no estaba (550); los que el
+     * servidor no dejó borrar y, si falla la conexión, los pendientes se reprograman.
+     * Visible en el paquete para las pruebas de rendimiento.
+     */
+    void expireFiles(List<String> paths) {
+        FTPClient client;
+        try {
+            client = connectionPool.borrow();
+        } catch (IOException e) {
+            Logger.logError("Unable to expire " + paths.size() + " files (" + e.getMessage() + ")");
+            rescheduleExpiry(paths);
+            return;
+        }
+        int done = 0;
+        List<String> refused = new ArrayList<>();
+        try {
+            for (String path : paths) {
+                if (client.deleteFile(path)) {
+                    Logger.logMessage("Expired file " + path + " deleted");
+                    metadata.removeLifetime(path);
+                } else if (client.getReplyCode() == FTPReply.FILE_UNAVAILABLE) {
+                    Logger.logMessage("Expired file " + path + " already gone");
+                    metadata.removeLifetime(path);
+                } else {
+                    Logger.logError("Unable to delete expired file " + path + " (" + client.getReplyString().trim() + ")");
+                    refused.add(path);
+                }
+                done++;
             }
+            metadata.sync();
+            connectionPool.release(client);
         } catch (IOException e) {
-            e.printStackTrace();
-            Logger.logError("Unable to clean remote directory (" + e.getMessage() + ")");
+            connectionPool.invalidate(client);
+            Logger.logError("Unable to expire files (" + e.getMessage() + ")");
+            refused.addAll(paths.subList(done, paths.size()));
         }
+        rescheduleExpiry(refused);
     }
 
-    private boolean existsOnFtp(File file) throws IOException {
-        String remotePath = toFtpPath(file);
-        ftpClient.changeWorkingDirectory("/");
-        FTPFile[] ftpFiles = ftpClient.listFiles(remotePath);
-        if (ftpFiles.length == 0)
+    private void rescheduleExpiry(List<String> paths) {
+        long retryAt = System.currentTimeMillis() + EXPIRY_BATCH_WINDOW_MILLIS * 30;
+        for (String path : paths) {
+            if (fileLifetimes.containsKey(path)) {
+                expiryScheduler.schedule(path, retryAt);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta el plan por etapas para que cada directorio exista antes de sus archivos
+     * y sólo se intente borrar cuando ya se han eliminado sus hijos.
+     *
+     * @param sources Contenido ya leído de algunos archivos a subir ({@link FanOutReader})
+     * @return Las acciones que no se completaron por un error de conexión, para reintentarlas tras reconectar
+     */
+    private SyncPlan executePlan(SyncPlan plan, Map<File, InputStream> sources) {
+        SyncPlan remaining = new SyncPlan();
+        List<SyncPlan.Action> mkdirs = plan.get(SyncPlan.Type.MKDIR);
+        for (int i = 0; i < mkdirs.size(); i++) {
+            SyncPlan.Action action = mkdirs.get(i);
+            try {
+                if (supervisor.client().makeDirectory(action.getPath())) {
+                    remoteDirs.add(action.getPath());
+                } else {
+                    Logger.logError("Unable to create remote directory " + action.getPath() + " (" + supervisor.client().getReplyString().trim() + ")");
+                }
+            } catch (IOException e) {
+                Logger.logError("Unable to create remote directories (" + e.getMessage() + ")");
+                addAll(remaining, mkdirs.subList(i, mkdirs.size()));
+                break;
+            }
+        }
+
+        // Se lanzan por prioridad: el ejecutor es FIFO, así que las fotos no esperan detrás de los vídeos
+        List<SyncPlan.Action> uploads = new ArrayList<>(plan.get(SyncPlan.Type.UPLOAD));
+        Map<File, TransferPriority> priorities = new HashMap<>();
+        for (SyncPlan.Action action : uploads) {
+            priorities.put(action.getLocalFile(), TransferPriority.classify(action.getLocalFile()));
+        }
+        uploads.sort(Comparator.comparing(action -> priorities.get(action.getLocalFile())));
+        List<Future<Boolean>> pendingUploads = new ArrayList<>();
+        for (SyncPlan.Action action : uploads) {
+            pendingUploads.add(submitUpload(action.getLocalFile(), sources.get(action.getLocalFile())));
+        }
+        awaitUploads(pendingUploads);
+        for (int i = 0; i < uploads.size(); i++) {
+            if (!uploadSucceeded(pendingUploads.get(i))) {
+                addAll(remaining, uploads.subList(i, i + 1));
+            }
+        }
+
+        List<SyncPlan.Action> touches = plan.get(SyncPlan.Type.TOUCH);
+        for (int i = 0; i < touches.size(); i++) {
+            SyncPlan.Action action = touches.get(i);
+            ContentHasher currentHasher = hasher;
+            try {
+                // Si el archivo cambió después de planificar, se deja para la siguiente pasada. hash() sólo vuelve
+                // a leerlo si su firma ya no es la de la caché
+                if (currentHasher == null || !Arrays.equals(action.getHash(), currentHasher.hash(action.getLocalFile()))) {
+                    continue;
+                }
+                supervisor.client().setModificationTime(action.getPath(), timeStampToString(action.getLocalFile().lastModified()));
+                localIndex.record(action.getPath(), action.getLocalFile(), action.getHash());
+            } catch (IOException e) {
+                Logger.logError("Unable to update remote time of " + action.getPath() + " (" + e.getMessage() + ")");
+                addAll(remaining, touches.subList(i, touches.size()));
+                break;
+            }
+        }
+
+        List<SyncPlan.Action> cleanup = new ArrayList<>(plan.get(SyncPlan.Type.DELETE));
+        cleanup.addAll(plan.get(SyncPlan.Type.RMDIR));
+        for (int i = 0; i < cleanup.size(); i++) {
+            SyncPlan.Action action = cleanup.get(i);
+            long start = System.nanoTime();
+            try {
+                if (action.getType() == SyncPlan.Type.DELETE) {
+                    if (supervisor.client().deleteFile(action.getPath())) {
+                        Logger.logMessage("Remote file " + action.getPath() + " deleted");
+                    }
+                } else if (supervisor.client().removeDirectory(action.getPath())) {
+                    remoteDirs.invalidate(action.getPath());
+                }
+                metrics.record(SyncMetrics.Phase.DELETE, start);
+            } catch (IOException e) {
+                metrics.error(SyncMetrics.Phase.DELETE);
+                Logger.logError("Unable to clean remote directory (" + e.getMessage() + ")");
+                addAll(remaining, cleanup.subList(i, cleanup.size()));
+                break;
+            }
+        }
+        return remaining;
+    }
+
+    private static void addAll(SyncPlan plan, List<SyncPlan.Action> actions) {
+        for (SyncPlan.Action action : actions) {
+            plan.add(action.getType(), action.getPath(), action.getLocalFile(), action.getHash());
+        }
+    }
+
+    private static boolean uploadSucceeded(Future<Boolean> upload) {
+        try {
+            return upload.isDone() && upload.get();
+        } catch (InterruptedException | ExecutionException e) {
             return false;
-        assert ftpFiles.length == 1;
+        }
+    }
 
-        String localLastModified = timeStampToString(file.lastModified());
-        String serverLastModified = ftpClient.getModificationTime(remotePath).substring(0, 14);
-        return localLastModified.equals(serverLastModified);
+    /**
+     * @return Tarea que termina en true si el archivo se subió
+     */
+    private Future<Boolean> submitUpload(File file) {
+        return submitUpload(file, null);
+    }
+
+    /**
+     * @param content Contenido ya leído del archivo, o null para leerlo del disco
+     */
+    private Future<Boolean> submitUpload(File file, InputStream content) {
+        return uploadExecutor().submit(() -> {
+            try {
+                if (content != null) {
+                    upload(file, content);
+                } else {
+                    upload(file, "user", 0);
+                }
+                return true;
+            } catch (IOException e) {
+                Logger.logError("Unable to upload " + file + "(" + e.getMessage() + ")");
+                return false;
+            } finally {
+                if (content != null) {
+                    content.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Aplica sólo las rutas notificadas por el {@link DirectoryWatcher}, sin listar el servidor.
+     * Los archivos borrados siguen la misma regla de propiedad que {@link #reconcile}; los directorios
+     * borrados se intentan eliminar y, si no están vacíos en remoto, se dejan para la reconciliación completa.
+     */
+    private void syncChanges(Set<Path> changes) {
+        if (dryRun) {
+            Logger.logMessage("Dry run: " + changes.size() + " local changes not pushed");
+            changes.forEach(System.out::println);
+            return;
+        }
+        List<Future<?>> pendingUploads = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Path path : changes) {
+            File file = path.toFile();
+            if (isInternalFile(file)) {
+                continue;
+            }
+            if (file.isFile()) {
+                if (!localIndex.isUnchanged(toFtpPath(file), file)) {
+                    pendingUploads.add(submitUpload(file));
+                }
+            } else if (!file.exists()) {
+                deleted.add(toFtpPath(file));
+            }
+        }
+        awaitUploads(pendingUploads);
+
+        // Los hijos antes que sus directorios
+        deleted.sort(Comparator.comparing(String::length).reversed());
+        for (String ftpPath : deleted) {
+            long start = System.nanoTime();
+            try {
+                if (localIndex.get(ftpPath) != null) {
+                    localIndex.remove(ftpPath);
+                    if (!fileOwners.getOrDefault(ftpPath, "").equals("user") && supervisor.client().deleteFile(ftpPath)) {
+                        Logger.logMessage("Remote file " + ftpPath + " deleted");
+                    }
+                } else if (supervisor.client().removeDirectory(ftpPath + "/")) {
+                    remoteDirs.invalidate(ftpPath + "/");
+                    Logger.logMessage("Remote directory " + ftpPath + "/ deleted");
+                }
+                metrics.record(SyncMetrics.Phase.DELETE, start);
+            } catch (IOException e) {
+                metrics.error(SyncMetrics.Phase.DELETE);
+                Logger.logError("Unable to delete remote " + ftpPath + " (" + e.getMessage() + ")");
+            }
+        }
+
+        saveLocalIndex();
+    }
+
+    /**
+     * Archivos propios del sincronizador que no se suben al servidor. Los de metadatos cambian con cada subida,
+     * así que en modo vigilancia provocarían un ciclo de subidas sin fin.
+     */
+    private boolean isInternalFile(File file) {
+        return file.getParentFile().equals(syncedDir) && INTERNAL_FILES.contains(file.getName());
+    }
+
+    /**
+     * Espera a que terminen las subidas lanzadas en la pasada actual antes de limpiar el servidor.
+     */
+    private void awaitUploads(List<? extends Future<?>> pendingUploads) {
+        for (Future<?> pending : pendingUploads) {
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Logger.logError("Upload task failed (" + e.getCause() + ")");
+            }
+        }
     }
 
     private String timeStampToString(long timestamp) {
-        return new SimpleDateFormat("yyyyMMddHHmmss").format(new Date(timestamp));
+        return FTP_TIME_FORMAT.format(Instant.ofEpochMilli(timestamp));
     }
 
+    /**
+     * Sube un archivo usando una sesión del pool, por lo que puede llamarse desde varios hilos a la vez.
+     *
+     * @param lifetime Milisegundos hasta que el archivo caduca en el servidor; 0 o menos si no caduca
+     */
     public void upload(File localFile, String owner, long lifetime) throws IOException {
+        upload(localFile, owner, lifetime, null, TransferPriority.classify(localFile));
+    }
+
+    /**
+     * Como {@link #upload(File, String, long)}, notificando los bytes enviados a {@code progress}.
+     * Si se cancela, la subida termina con una {@link IOException} y {@link Transfer#isCancelled()} a true.
+     */
+    public void upload(File localFile, String owner, long lifetime, Transfer progress) throws IOException {
+        upload(localFile, owner, lifetime, progress, TransferPriority.classify(localFile));
+    }
+
+    private void upload(File localFile, String owner, long lifetime, Transfer progress, TransferPriority priority)
+            throws IOException {
         Logger.logMessage("Uploading " + localFile);
         String ftpPath = toFtpPath(localFile);
 
-        backupFile(localFile);
+        BackupStore backups = backupStore;
+        if (backups != null) {
+            backups.submit(localFile, ftpPath);
+        }
 
-        String ftpPathParents = ftpPath.substring(0, ftpPath.lastIndexOf('/'));
-        ftpCreateDirectoryTree(ftpPathParents);
+        long size = localFile.length();
+        long lastModified = localFile.lastModified();
+        // Sólo se anotan los archivos grandes enviados de una pieza: son los únicos que merece la pena reanudar
+        boolean resumable = size >= RESUMABLE_MIN_BYTES && !uploader.isSegmented(size);
+        boolean resume = resumable && metadata.isPendingUpload(ftpPath, size, lastModified);
+        if (resumable && !resume) {
+            long metadataStart = System.nanoTime();
+            try {
+                metadata.putPendingUpload(ftpPath, size, lastModified);
+                metadata.sync();
+            } catch (IOException e) {
+                metrics.error(SyncMetrics.Phase.METADATA);
+                throw e;
+            }
+            metrics.record(SyncMetrics.Phase.METADATA, metadataStart);
+        }
 
-        ftpClient.changeWorkingDirectory("/");
-        InputStream is = new FileInputStream(localFile);
-        ftpClient.storeFile(ftpPath, is);
-        is.close();
+        long start = System.nanoTime();
+        FTPClient client = borrowForUpload();
+        String ftpPathParent = ftpPath.substring(0, ftpPath.lastIndexOf('/') + 1);
+        byte[] sentHash;
+        try {
+            remoteDirs.ensure(client, ftpPathParent);
+            sentHash = uploader.upload(client, localFile, ftpPath, resume, progress, priority);
+
+            String ftpDate = timeStampToString(lastModified);
+            client.setModificationTime(ftpPath, ftpDate);
+        } catch (IOException e) {
+            metrics.error(SyncMetrics.Phase.UPLOAD);
+            // El directorio puede haber desaparecido del servidor; el siguiente intento lo vuelve a crear
+            remoteDirs.invalidate(ftpPathParent);
+            connectionPool.invalidate(client);
+            throw e;
+        }
+        connectionPool.release(client);
+        metrics.record(SyncMetrics.Phase.UPLOAD, start);
+        metrics.uploaded(size);
+        recordUpload(ftpPath, localFile, owner, lifetime, size, lastModified, sentHash);
+    }
+
+    /**
+     * Sube un archivo cuyo contenido llega de un {@link FanOutReader} compartido con otros destinos.
+     * Sin reanudación ni troceado: el flujo sólo se puede recorrer una vez.
+     */
+    void upload(File localFile, InputStream content) throws IOException {
+        Logger.logMessage("Uploading " + localFile + " (shared read)");
+        String ftpPath = toFtpPath(localFile);
+
+        BackupStore backups = backupStore;
+        if (backups != null) {
+            backups.submit(localFile, ftpPath);
+        }
+
+        long size = localFile.length();
+        long lastModified = localFile.lastModified();
+        long start = System.nanoTime();
+        FTPClient client = borrowForUpload();
+        String ftpPathParent = ftpPath.substring(0, ftpPath.lastIndexOf('/') + 1);
+        byte[] sentHash;
+        try {
+            remoteDirs.ensure(client, ftpPathParent);
+            sentHash = uploader.upload(client, content, localFile, ftpPath, TransferPriority.classify(localFile));
+            client.setModificationTime(ftpPath, timeStampToString(lastModified));
+        } catch (IOException e) {
+            metrics.error(SyncMetrics.Phase.UPLOAD);
+            remoteDirs.invalidate(ftpPathParent);
+            connectionPool.invalidate(client);
+            throw e;
+        }
+        connectionPool.release(client);
+        metrics.record(SyncMetrics.Phase.UPLOAD, start);
+        metrics.uploaded(size);
+        recordUpload(ftpPath, localFile, "user", 0, size, lastModified, sentHash);
+    }
+
+    private FTPClient borrowForUpload() throws IOException {
+        try {
+            return connectionPool.borrow();
+        } catch (IOException e) {
+            metrics.error(SyncMetrics.Phase.UPLOAD);
+            throw e;
+        }
+    }
+
+    /**
+     * Anota la subida con la firma ({@code size}, {@code lastModified}) que tenía el archivo al empezar a
+     * enviarlo. Si el archivo cambió mientras se subía, la firma ya no coincide y la próxima pasada lo vuelve a
+     * subir en vez de darlo por igual.
+     *
+     * @param sentHash Hash de lo enviado, calculado al vuelo; null si la subida fue troceada o reanudada
+     */
+    private void recordUpload(String ftpPath, File localFile, String owner, long lifetime, long size, long lastModified,
+                              byte[] sentHash) throws IOException {
+        // El hash queda en el índice para compararlo si el servidor no calcula sumas propias. Sólo se calcula
+        // leyendo el archivo si no se hizo al enviar, y se descarta si cambió mientras tanto
+        ContentHasher currentHasher = hasher;
+        byte[] hash = sentHash;
+        if (hash == null && currentHasher != null && signatureIs(localFile, size, lastModified)) {
+            hash = currentHasher.hash(localFile);
+            if (!signatureIs(localFile, size, lastModified)) {
+                hash = null;
+            }
+        }
+        localIndex.record(ftpPath, size, lastModified, currentHasher != null ? hash : null);
 
-        String ftpDate = timeStampToString(localFile.lastModified());
-        ftpClient.setModificationTime(ftpPath, ftpDate);
+        long start = System.nanoTime();
+        try {
+            // No escribe nada si la subida no estaba anotada como reanudable
+            metadata.removePendingUpload(ftpPath);
+            metadata.putOwner(ftpPath, owner);
+            if (lifetime > 0) {
+                long expiresAt = System.currentTimeMillis() + lifetime;
+                metadata.putLifetime(ftpPath, expiresAt);
+                expiryScheduler.schedule(ftpPath, expiresAt);
+            } else {
+                metadata.removeLifetime(ftpPath);
+                expiryScheduler.cancel(ftpPath);
+            }
+        } catch (IOException e) {
+            metrics.error(SyncMetrics.Phase.METADATA);
+            throw e;
+        }
+        metrics.record(SyncMetrics.Phase.METADATA, start);
+    }
 
-        fileOwners.put(ftpPath, owner);
-        fileLifetimes.put(ftpPath, System.currentTimeMillis() + lifetime);
-        saveMetadata();
-        saveLifetimeMetadata();
+    private static boolean signatureIs(File file, long size, long lastModified) {
+        return file.length() == size && file.lastModified() == lastModified;
     }
 
     private String toFtpPath(File localFile) {
@@ -204,97 +1123,114 @@ public class SincronizadorFTP {
                 .replace('\\', '/');
     }
 
-    private void ftpCreateDirectoryTree(String dirTree) throws IOException {
-        boolean dirExists = true;
-        String[] directories = dirTree.split("/");
-        for (String dir : directories) {
-            if (!dir.isEmpty()) {
-                if (dirExists) {
-                    dirExists = ftpClient.changeWorkingDirectory(dir);
-                }
-                if (!dirExists) {
-                    if (!ftpClient.makeDirectory(dir)) {
-                        throw new IOException("Unable to create remote directory '" + dir + "'.  error='" + ftpClient.getReplyString() + "'");
-                    }
-                    if (!ftpClient.changeWorkingDirectory(dir)) {
-                        throw new IOException("Unable to change into newly created remote directory '" + dir + "'.  error='" + ftpClient.getReplyString() + "'");
-                    }
-                }
+    /**
+     * Borra una ruta en local y en el servidor. Admite directorios y patrones, como {@link #delete(Collection)}.
+     */
+    public void deleteFile(String filePath, boolean isImage) throws IOException {
+        String kind = isImage ? "image" : "file";
+        for (BulkDelete.Result result : delete(Collections.singletonList(filePath))) {
+            if (result.getStatus() == BulkDelete.Status.DELETED) {
+                Logger.logMessage("Remote " + kind + " " + result.getPath() + " deleted");
+            } else {
+                Logger.logError("Unable to delete remote " + kind + " " + result);
             }
         }
     }
 
-    private void loadMetadata() throws IOException {
-        File metadataFile = new File(syncedDir, METADATA_FILE);
-        if (metadataFile.exists()) {
-            List<String> lines = Files.readAllLines(metadataFile.toPath());
-            for (String line : lines) {
-                String[] parts = line.split(" ");
-                if (parts.length == 2) {
-                    fileOwners.put(parts[0], parts[1]);
-                }
-            }
+    /**
+     * Borra muchas rutas o patrones ('*' y '?') de una vez: primero el servidor con {@link BulkDelete},
+     * vaciando los directorios en paralelo con las sesiones del pool y los hilos de subida, y después la copia
+     * local de lo que el servidor confirmó. Mientras tanto las pasadas no tocan esas rutas, para no volver a
+     * subir lo que aún está en local. Los metadatos y el índice local se guardan una sola vez al final.
+     *
+     * @param patterns Rutas relativas a la carpeta sincronizada, con o sin '/' inicial
+     * @return Un resultado por cada ruta encontrada en el servidor, uno {@link BulkDelete.Status#NOT_FOUND}
+     * por cada patrón sin coincidencias y uno {@link BulkDelete.Status#FAILED} por cada ruta vacía o con
+     * tramos "." o "..", en el orden de {@code patterns}
+     * @throws IOException Si no se puede listar el servidor o guardar los metadatos
+     */
+    public List<BulkDelete.Result> delete(Collection<String> patterns) throws IOException {
+        List<String> normalized = new ArrayList<>();
+        for (String pattern : patterns) {
+            normalized.add(pattern.startsWith("/") ? pattern : "/" + pattern);
         }
-    }
 
-    private void saveMetadata() throws IOException {
-        File metadataFile = new File(syncedDir, METADATA_FILE);
-        List<String> lines = new ArrayList<>();
-        for (Map.Entry<String, String> entry : fileOwners.entrySet()) {
-            lines.add(entry.getKey() + " " + entry.getValue());
+        List<BulkDelete.Result> results = new ArrayList<>();
+        long start = System.nanoTime();
+        BulkDelete bulk = new BulkDelete(connectionPool, uploadExecutor());
+        List<CompletableFuture<BulkDelete.Result>> pending = new ArrayList<>();
+        List<List<String>> matches = bulk.resolve(normalized);
+        for (int i = 0; i < normalized.size(); i++) {
+            String pattern = normalized.get(i);
+            if (!BulkDelete.isSafe(pattern)) {
+                pending.add(CompletableFuture.completedFuture(BulkDelete.Result.rejected(pattern, "invalid path")));
+                continue;
+            }
+            if (matches.get(i).isEmpty()) {
+                pending.add(CompletableFuture.completedFuture(BulkDelete.Result.notFound(pattern)));
+                continue;
+            }
+            for (String path : matches.get(i)) {
+                // Mientras se borra, una pasada no debe volver a subir lo que aún queda en local
+                deleting.add(path);
+                pending.add(bulk.remove(path));
+            }
         }
-        Files.write(metadataFile.toPath(), lines);
-    }
 
-    private void loadLifetimeMetadata() throws IOException {
-        File metadataFile = new File(syncedDir, LIFETIME_METADATA_FILE);
-        if (metadataFile.exists()) {
-            List<String> lines = Files.readAllLines(metadataFile.toPath());
-            for (String line : lines) {
-                String[] parts = line.split(" ");
-                if (parts.length == 2) {
-                    fileLifetimes.put(parts[0], Long.parseLong(parts[1]));
+        int files = 0;
+        try {
+            for (CompletableFuture<BulkDelete.Result> result : pending) {
+                results.add(result.join());
+            }
+            for (BulkDelete.Result result : results) {
+                // En local sólo se borra lo que el servidor confirmó, y los directorios después de su contenido
+                for (String ftpPath : result.getDeletedFiles()) {
+                    deleteLocal(ftpPath);
+                    metadata.removeOwner(ftpPath);
+                    metadata.removeLifetime(ftpPath);
+                    expiryScheduler.cancel(ftpPath);
+                    localIndex.remove(ftpPath);
+                }
+                for (String dir : result.getDeletedDirs()) {
+                    deleteLocal(dir);
+                    remoteDirs.invalidate(dir);
                 }
+                files += result.getDeletedFiles().size();
+            }
+            metadata.sync();
+            localIndex.save();
+        } finally {
+            for (List<String> matched : matches) {
+                deleting.removeAll(matched);
             }
         }
+        metrics.record(SyncMetrics.Phase.DELETE, start);
+        Logger.logMessage("Deleted " + files + " remote files for " + patterns.size() + " paths in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return results;
     }
 
-    private void saveLifetimeMetadata() throws IOException {
-        File metadataFile = new File(syncedDir, LIFETIME_METADATA_FILE);
-        List<String> lines = new ArrayList<>();
-        for (Map.Entry<String, Long> entry : fileLifetimes.entrySet()) {
-            lines.add(entry.getKey() + " " + entry.getValue());
-        }
-        Files.write(metadataFile.toPath(), lines);
-    }
-
-    private void backupFile(File localFile) throws IOException {
-        File backupDir = new File(BACKUP_DIR_NAME);
-        if (!backupDir.exists()) {
-            backupDir.mkdirs();
-        }
-        File backupFile = new File(backupDir, localFile.getName());
-        Files.copy(localFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-    }
-    public void deleteFile(String filePath, boolean isImage) throws IOException {
-        // Eliminar archivo localmente
-        File localFile = new File(syncedDir.getPath() + File.separator + filePath);
-        if (localFile.exists()) {
-            Files.delete(localFile.toPath());
-            Logger.logMessage("Local " + (isImage ? "image" : "file") + " " + filePath + " deleted");
-        } else {
-            Logger.logError("Local " + (isImage ? "image" : "file") + " " + filePath + " not found");
+    /**
+     * Borra la copia local de un archivo, o de un directorio si ya está vacío: lo que haya aparecido en local
+     * después del listado del servidor no se borró allí y se queda.
+     * Nunca toca la propia carpeta sincronizada, nada fuera de ella ni los archivos internos.
+     */
+    private void deleteLocal(String ftpPath) {
+        Path root = syncedDir.toPath().toAbsolutePath().normalize();
+        Path local = root.resolve(ftpPath.substring(1)).normalize();
+        if (!local.startsWith(root) || local.equals(root)
+                || local.getParent().equals(root) && INTERNAL_FILES.contains(local.getFileName().toString())) {
+            Logger.logError("Refusing to delete local " + ftpPath);
+            return;
         }
-
-        // Eliminar archivo en el servidor FTP
-        if (ftpClient.deleteFile(filePath)) {
-            Logger.logMessage("Remote " + (isImage ? "image" : "file") + " " + filePath + " deleted");
-            fileOwners.remove(filePath);
-            fileLifetimes.remove(filePath);
-            saveMetadata();
-            saveLifetimeMetadata();
-        } else {
-            Logger.logError("Unable to delete remote " + (isImage ? "image" : "file") + " " + filePath);
+        try {
+            if (Files.deleteIfExists(local)) {
+                Logger.logMessage("Local " + ftpPath + " deleted");
+            }
+        } catch (DirectoryNotEmptyException e) {
+            Logger.logMessage("Local " + ftpPath + " kept, it has files not deleted on the server");
+        } catch (IOException e) {
+            Logger.logError("Unable to delete local " + ftpPath + " (" + e.getMessage() + ")");
         }
     }
 
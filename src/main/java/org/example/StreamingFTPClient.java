@@ -0,0 +1,69 @@
+package org.example;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPCmd;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileEntryParser;
+import org.apache.commons.net.ftp.parser.DefaultFTPFileEntryParserFactory;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.function.Consumer;
+
+/**
+ * {@link FTPClient} que entrega los listados entrada a entrada según llegan por la conexión de datos.
+ * {@link FTPClient#initiateListParsing} y {@link FTPClient#initiateMListParsing} leen antes la respuesta
+ * entera en una lista de líneas, que con cientos de miles de archivos en un directorio pesa tanto como
+ * los propios {@link FTPFile}. Las sesiones de {@link FTPConnectionPool} son siempre de este tipo.
+ */
+public class StreamingFTPClient extends FTPClient {
+
+    private FTPFileEntryParser listParser;
+
+    /**
+     * Lista un directorio con MLSD o LIST y pasa cada entrada a {@code sink} en cuanto se lee. Mientras dura
+     * el listado la sesión está ocupada: {@code sink} no puede enviar órdenes por ella.
+     *
+     * @return false si el servidor rechazó el listado o no lo terminó bien
+     * @throws IOException Si falla la conexión
+     */
+    public boolean list(String dir, boolean mlsd, Consumer<FTPFile> sink) throws IOException {
+        FTPFileEntryParser parser = mlsd ? MLSxEntryParser.getInstance() : listParser();
+        Socket socket = _openDataConnection_(mlsd ? FTPCmd.MLSD : FTPCmd.LIST, mlsd ? dir : getListArguments(dir));
+        if (socket == null) {
+            return false;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), getControlEncoding()))) {
+            String line;
+            while ((line = parser.readNextEntry(reader)) != null) {
+                FTPFile file = parser.parseFTPEntry(line);
+                if (file != null) {
+                    sink.accept(file);
+                }
+            }
+        } finally {
+            socket.close();
+        }
+        return completePendingCommand();
+    }
+
+    /**
+     * Analizador de LIST para el sistema que anuncia el servidor, el de Unix si no contesta a SYST.
+     */
+    private FTPFileEntryParser listParser() {
+        if (listParser == null) {
+            DefaultFTPFileEntryParserFactory factory = new DefaultFTPFileEntryParserFactory();
+            String system;
+            try {
+                system = getSystemType();
+            } catch (IOException e) {
+                system = null;
+            }
+            listParser = system != null ? factory.createFileEntryParser(system) : factory.createUnixFTPEntryParser();
+        }
+        return listParser;
+    }
+}
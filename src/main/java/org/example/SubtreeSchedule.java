@@ -0,0 +1,61 @@
+package org.example;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Frecuencia de revisión de cada subárbol (directorio de primer nivel, p. ej. "/fotos/").
+ * Un subárbol con cambios se revisa en todas las pasadas; cada revisión sin cambios duplica su periodo
+ * hasta {@code maxPeriod} pasadas, así las carpetas de archivo apenas cuestan listados.
+ */
+public class SubtreeSchedule {
+
+    private final int maxPeriod;
+    private final Map<String, Integer> periods = new HashMap<>();
+    private final Map<String, Integer> waited = new HashMap<>();
+
+    public SubtreeSchedule(int maxPeriod) {
+        this.maxPeriod = Math.max(1, maxPeriod);
+    }
+
+    /**
+     * Subárboles que no tocan en esta pasada. Los que no se conocían se revisan siempre.
+     */
+    public Set<String> skipped(Collection<String> subtrees) {
+        Set<String> skipped = new HashSet<>();
+        for (String subtree : subtrees) {
+            int wait = waited.getOrDefault(subtree, 0) + 1;
+            if (wait < periods.getOrDefault(subtree, 1)) {
+                waited.put(subtree, wait);
+                skipped.add(subtree);
+            } else {
+                waited.remove(subtree);
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Ajusta el periodo de los subárboles revisados según hayan tenido cambios o no.
+     */
+    public void record(Collection<String> scanned, Set<String> changed) {
+        for (String subtree : scanned) {
+            if (changed.contains(subtree)) {
+                periods.remove(subtree);
+            } else {
+                periods.put(subtree, Math.min(maxPeriod, periods.getOrDefault(subtree, 1) * 2));
+            }
+        }
+    }
+
+    /**
+     * @return El directorio de primer nivel de la ruta ("/a/b/c.txt" da "/a/"), o null si está en la raíz
+     */
+    public static String subtreeOf(String ftpPath) {
+        int end = ftpPath.indexOf('/', 1);
+        return end < 0 ? null : ftpPath.substring(0, end + 1);
+    }
+}
@@ -0,0 +1,213 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Modo demonio sin interfaz: sincroniza todas las raíces de un archivo de configuración en un único proceso,
+ * con hilos y conexiones compartidos ({@link SyncRuntime}).
+ * <pre>
+ * pass.threads=4
+ * upload.threads=16
+ * connections.per.server=8
+ * server.ftp.example.com:21.connections=4
+ * bandwidth.limit=08:00-18:00=512K,18:00-08:00=8M
+ * server.ftp.example.com:21.bandwidth=2M
+ *
+ * job.fotos.dir=/datos/fotos
+ * job.fotos.server=ftp.example.com
+ * job.fotos.port=21
+ * job.fotos.user=Admin
+ * job.fotos.password=secreto
+ * job.fotos.interval=60
+ * job.fotos.maxInterval=600
+ * job.fotos.workers=4
+ * job.fotos.backup=/copias/fotos
+ * job.fotos.mirrors=eu
+ * job.fotos.mirror.eu.server=ftp-eu.example.com
+ * job.fotos.mirror.eu.port=21
+ * </pre>
+ * Sin {@code backup}, cada raíz guarda sus copias en {@code backup.dir/<nombre>}. Una raíz con {@code mirrors}
+ * se replica además en esos servidores con {@link MirrorSync}; el usuario y la contraseña de cada espejo, si no
+ * se indican, son los de la raíz. Los límites de velocidad ({@link RateSchedule}) se aplican al
+ * {@link BandwidthLimiter} del proceso y los comparten todas las raíces.
+ */
+public class SyncDaemon {
+
+    private static final int DEFAULT_PORT = 21;
+    private static final int DEFAULT_INTERVAL = 60;
+    private static final int DEFAULT_WORKERS = 4;
+
+    private final SyncRuntime runtime;
+    private final List<SincronizadorFTP> jobs = new ArrayList<>();
+    private final List<MirrorSync> mirrorJobs = new ArrayList<>();
+
+    public SyncDaemon(Properties config) {
+        runtime = new SyncRuntime(
+                intValue(config, "pass.threads", 4),
+                intValue(config, "upload.threads", 16),
+                intValue(config, "connections.per.server", 8));
+        BandwidthLimiter limiter = BandwidthLimiter.getDefault();
+        if (config.getProperty("bandwidth.limit") != null) {
+            limiter.setGlobalLimit(RateSchedule.parse(config.getProperty("bandwidth.limit")));
+        }
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith("server.") && key.endsWith(".connections")) {
+                String address = key.substring("server.".length(), key.length() - ".connections".length());
+                runtime.setConnections(host(address), port(address), intValue(config, key, 1));
+            } else if (key.startsWith("server.") && key.endsWith(".bandwidth")) {
+                String address = key.substring("server.".length(), key.length() - ".bandwidth".length());
+                limiter.setServerLimit(host(address), port(address), RateSchedule.parse(config.getProperty(key)));
+            }
+        }
+    }
+
+    /**
+     * Arranca todas las raíces. Una raíz que no se puede iniciar se anota y no impide arrancar las demás.
+     *
+     * @return Número de raíces en marcha
+     */
+    public int start(Properties config) {
+        String backupRoot = System.getProperty("backup.dir", "D:\\FTP2");
+        for (String name : jobNames(config)) {
+            String prefix = "job." + name + ".";
+            try {
+                File dir = new File(required(config, prefix + "dir"));
+                String server = required(config, prefix + "server");
+                int port = intValue(config, prefix + "port", DEFAULT_PORT);
+                String user = required(config, prefix + "user");
+                String password = config.getProperty(prefix + "password", "");
+                int interval = intValue(config, prefix + "interval", DEFAULT_INTERVAL);
+                int maxInterval = intValue(config, prefix + "maxInterval", interval * 8);
+                int workers = intValue(config, prefix + "workers", DEFAULT_WORKERS);
+
+                String mirrors = config.getProperty(prefix + "mirrors", "").trim();
+                if (!mirrors.isEmpty()) {
+                    startMirrored(config, name, dir, server, port, user, password, interval, maxInterval, workers, mirrors);
+                    continue;
+                }
+
+                SincronizadorFTP sync = new SincronizadorFTP(dir, server, port, user, password, workers, runtime);
+                sync.setBackupDir(new File(config.getProperty(prefix + "backup", backupRoot + File.separator + name)));
+                sync.startSync(interval, maxInterval);
+                jobs.add(sync);
+                Logger.logMessage("Job " + name + " started (" + dir + " -> " + server + ":" + port + ")");
+            } catch (IOException | IllegalArgumentException e) {
+                Logger.logError("Unable to start job " + name + " (" + e.getMessage() + ")");
+            }
+        }
+        return jobs.size() + mirrorJobs.size();
+    }
+
+    /**
+     * Un espejo que no responde al arrancar se anota y se deja fuera; el resto de destinos arrancan igual.
+     */
+    private void startMirrored(Properties config, String name, File dir, String server, int port, String user,
+                               String password, int interval, int maxInterval, int workers, String mirrors)
+            throws IOException {
+        String prefix = "job." + name + ".";
+        MirrorSync mirror = new MirrorSync(dir, workers, runtime);
+        mirror.addTarget(name, server, port, user, password);
+        int targets = 1;
+        for (String mirrorName : mirrors.split(",")) {
+            String mirrorPrefix = prefix + "mirror." + mirrorName.trim() + ".";
+            try {
+                mirror.addTarget(mirrorName.trim(),
+                        required(config, mirrorPrefix + "server"),
+                        intValue(config, mirrorPrefix + "port", DEFAULT_PORT),
+                        config.getProperty(mirrorPrefix + "user", user),
+                        config.getProperty(mirrorPrefix + "password", password));
+                targets++;
+            } catch (IOException | IllegalArgumentException e) {
+                Logger.logError("Unable to add mirror " + mirrorName.trim() + " to job " + name + " (" + e.getMessage() + ")");
+            }
+        }
+        mirror.startSync(interval, maxInterval);
+        mirrorJobs.add(mirror);
+        Logger.logMessage("Job " + name + " started (" + dir + " -> " + targets + " targets)");
+    }
+
+    public void stop() {
+        for (SincronizadorFTP sync : jobs) {
+            sync.stopSync();
+        }
+        jobs.clear();
+        for (MirrorSync mirror : mirrorJobs) {
+            mirror.stopSync();
+        }
+        mirrorJobs.clear();
+        runtime.close();
+        Logger.flush();
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: SyncDaemon <config.properties>");
+            System.exit(2);
+        }
+        Properties config = new Properties();
+        try (Reader reader = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8)) {
+            config.load(reader);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        SyncDaemon daemon = new SyncDaemon(config);
+        int started = daemon.start(config);
+        System.out.println(started + " sync jobs running");
+        if (started == 0) {
+            daemon.stop();
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "sync-daemon-shutdown"));
+    }
+
+    private static TreeSet<String> jobNames(Properties config) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith("job.") && key.endsWith(".dir")) {
+                names.add(key.substring("job.".length(), key.length() - ".dir".length()));
+            }
+        }
+        return names;
+    }
+
+    private static String required(Properties config, String key) {
+        String value = config.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return value.trim();
+    }
+
+    private static String host(String address) {
+        int colon = address.lastIndexOf(':');
+        return colon < 0 ? address : address.substring(0, colon);
+    }
+
+    private static int port(String address) {
+        int colon = address.lastIndexOf(':');
+        return colon < 0 ? DEFAULT_PORT : Integer.parseInt(address.substring(colon + 1));
+    }
+
+    private static int intValue(Properties config, String key, int defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Métricas de una raíz: latencia y errores de cada fase de la pasada, archivos y bytes subidos, duración y
+ * ritmo de la última pasada y profundidad de las colas. Se publican como MXBean y, si {@code metrics.logInterval}
+ * (segundos) es mayor que 0, también como una línea periódica en {@code sync.log}.
+ */
+public class SyncMetrics implements SyncMetricsMXBean {
+
+    public enum Phase {
+        SCAN, LIST, CHECK, UPLOAD, BACKUP,
+        /** Anotaciones de cada subida en el diario de metadatos (con sus volcados a disco) y guardado del índice local */
+        METADATA,
+        DELETE
+    }
+
+    /**
+     * Resumen de una fase tal como se ve por JMX.
+     */
+    public static class PhaseStats {
+        private final long count;
+        private final long errors;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        @ConstructorProperties({"count", "errors", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"})
+        public PhaseStats(long count, long errors, double meanMillis, double p50Millis, double p95Millis,
+                          double p99Millis, double maxMillis) {
+            this.count = count;
+            this.errors = errors;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+
+    private static final long LOG_INTERVAL_SECONDS = Long.getLong("metrics.logInterval", 0);
+    // Un solo hilo para las líneas periódicas de todas las raíces
+    private static ScheduledExecutorService logTimer;
+
+    private final String name;
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> errors = new EnumMap<>(Phase.class);
+    private final LongAdder filesUploaded = new LongAdder();
+    private final LongAdder bytesUploaded = new LongAdder();
+    private final LongAdder passes = new LongAdder();
+    private volatile long lastPassDurationMillis;
+    private volatile double lastPassFilesPerSecond;
+    private volatile double lastPassBytesPerSecond;
+    private volatile IntSupplier uploadQueue = () -> 0;
+    private volatile IntSupplier backupQueue = () -> 0;
+    private ObjectName objectName;
+    private ScheduledFuture<?> logTask;
+
+    public SyncMetrics(String name) {
+        this.name = name;
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+            errors.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * Anota lo que ha tardado una fase que empezó en {@code startNanos} ({@link System#nanoTime()}).
+     */
+    public void record(Phase phase, long startNanos) {
+        latencies.get(phase).record(System.nanoTime() - startNanos);
+    }
+
+    public void error(Phase phase) {
+        errors.get(phase).increment();
+    }
+
+    public void uploaded(long bytes) {
+        filesUploaded.increment();
+        bytesUploaded.add(bytes);
+    }
+
+    /**
+     * Marca el inicio de una pasada.
+     *
+     * @return Estado que hay que devolver a {@link #passFinished(long[])}
+     */
+    public long[] passStarted() {
+        return new long[]{System.nanoTime(), filesUploaded.sum(), bytesUploaded.sum()};
+    }
+
+    public void passFinished(long[] started) {
+        long nanos = Math.max(1, System.nanoTime() - started[0]);
+        double seconds = nanos / 1e9;
+        passes.increment();
+        lastPassDurationMillis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        lastPassFilesPerSecond = (filesUploaded.sum() - started[1]) / seconds;
+        lastPassBytesPerSecond = (bytesUploaded.sum() - started[2]) / seconds;
+    }
+
+    public void setQueueGauges(IntSupplier uploadQueue, IntSupplier backupQueue) {
+        this.uploadQueue = uploadQueue;
+        this.backupQueue = backupQueue;
+    }
+
+    /**
+     * Publica el MXBean y, si está configurada, la línea periódica. Un fallo al registrar sólo se anota.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.example:type=SyncMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            Logger.logError("Unable to register metrics for " + name + " (" + e.getMessage() + ")");
+            objectName = null;
+        }
+        if (LOG_INTERVAL_SECONDS > 0) {
+            logTask = logTimer().scheduleAtFixedRate(() -> Logger.logMessage(summary()),
+                    LOG_INTERVAL_SECONDS, LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (logTask != null) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Una línea con lo esencial, para el registro periódico.
+     */
+    public String summary() {
+        StringBuilder line = new StringBuilder("Metrics ").append(name).append(':');
+        line.append(String.format(Locale.ROOT, " passes=%d last=%dms files/s=%.1f KB/s=%.1f errors=%d queues=%d/%d",
+                getPassCount(), lastPassDurationMillis, lastPassFilesPerSecond, lastPassBytesPerSecond / 1024,
+                getErrorCount(), getUploadQueueDepth(), getBackupQueueDepth()));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = latencies.get(phase);
+            if (histogram.getCount() > 0) {
+                line.append(String.format(Locale.ROOT, " %s=%d/p50 %.1fms/p95 %.1fms",
+                        phase.name().toLowerCase(Locale.ROOT), histogram.getCount(),
+                        histogram.getPercentileMillis(0.5), histogram.getPercentileMillis(0.95)));
+            }
+        }
+        return line.toString();
+    }
+
+    @Override
+    public Map<String, PhaseStats> getPhases() {
+        Map<String, PhaseStats> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = latencies.get(phase);
+            phases.put(phase.name().toLowerCase(Locale.ROOT), new PhaseStats(histogram.getCount(),
+                    errors.get(phase).sum(), histogram.getMeanMillis(), histogram.getPercentileMillis(0.5),
+                    histogram.getPercentileMillis(0.95), histogram.getPercentileMillis(0.99), histogram.getMaxMillis()));
+        }
+        return phases;
+    }
+
+    @Override
+    public long getPassCount() {
+        return passes.sum();
+    }
+
+    @Override
+    public long getLastPassDurationMillis() {
+        return lastPassDurationMillis;
+    }
+
+    @Override
+    public double getLastPassFilesPerSecond() {
+        return lastPassFilesPerSecond;
+    }
+
+    @Override
+    public double getLastPassBytesPerSecond() {
+        return lastPassBytesPerSecond;
+    }
+
+    @Override
+    public long getFilesUploaded() {
+        return filesUploaded.sum();
+    }
+
+    @Override
+    public long getBytesUploaded() {
+        return bytesUploaded.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        long total = 0;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public int getUploadQueueDepth() {
+        return uploadQueue.getAsInt();
+    }
+
+    @Override
+    public int getBackupQueueDepth() {
+        return backupQueue.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        for (Phase phase : Phase.values()) {
+            latencies.get(phase).reset();
+            errors.get(phase).reset();
+        }
+        filesUploaded.reset();
+        bytesUploaded.reset();
+        passes.reset();
+    }
+
+    private static synchronized ScheduledExecutorService logTimer() {
+        if (logTimer == null) {
+            logTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-log");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return logTimer;
+    }
+}
@@ -0,0 +1,34 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * Atributos de {@link SyncMetrics} publicados por JMX ({@code org.example:type=SyncMetrics,name=...}).
+ */
+public interface SyncMetricsMXBean {
+
+    /**
+     * Latencias y errores por fase: scan, list, check, upload, backup, metadata y delete.
+     */
+    Map<String, SyncMetrics.PhaseStats> getPhases();
+
+    long getPassCount();
+
+    long getLastPassDurationMillis();
+
+    double getLastPassFilesPerSecond();
+
+    double getLastPassBytesPerSecond();
+
+    long getFilesUploaded();
+
+    long getBytesUploaded();
+
+    long getErrorCount();
+
+    int getUploadQueueDepth();
+
+    int getBackupQueueDepth();
+
+    void reset();
+}
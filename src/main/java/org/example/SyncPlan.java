@@ -0,0 +1,140 @@
+package org.example;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Plan de una pasada de sincronización: lo que hay que crear, subir y borrar en el servidor.
+ * Se calcula sin modificar nada comparando el árbol local con un {@link RemoteSnapshot},
+ * y se ejecuta después en orden: directorios nuevos, subidas, fechas corregidas, borrados y, al final,
+ * directorios vacíos.
+ */
+public class SyncPlan {
+
+    public enum Type {
+        MKDIR, UPLOAD,
+        /** Contenido ya comprobado igual: sólo se corrige la fecha remota y se anota en el índice local */
+        TOUCH,
+        DELETE, RMDIR
+    }
+
+    public static class Action {
+        private final Type type;
+        private final String path;
+        private final File localFile;
+        private final byte[] hash;
+
+        Action(Type type, String path, File localFile, byte[] hash) {
+            this.type = type;
+            this.path = path;
+            this.localFile = localFile;
+            this.hash = hash;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Ruta remota absoluta; los directorios llevan '/' final.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Archivo de origen de una subida o un TOUCH, null en el resto de acciones.
+         */
+        public File getLocalFile() {
+            return localFile;
+        }
+
+        /**
+         * Hash ya calculado del contenido de un TOUCH, null en el resto de acciones.
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + path;
+        }
+    }
+
+    private final Map<Type, List<Action>> actions = new EnumMap<>(Type.class);
+
+    public SyncPlan() {
+        for (Type type : Type.values()) {
+            actions.put(type, new ArrayList<>());
+        }
+    }
+
+    public void add(Type type, String path, File localFile) {
+        add(type, path, localFile, null);
+    }
+
+    public void add(Type type, String path, File localFile, byte[] hash) {
+        actions.get(type).add(new Action(type, path, localFile, hash));
+    }
+
+    /**
+     * Acciones de un tipo en orden de ejecución: los MKDIR de padres a hijos y los RMDIR de hijos a padres.
+     */
+    public List<Action> get(Type type) {
+        List<Action> list = new ArrayList<>(actions.get(type));
+        if (type == Type.MKDIR) {
+            list.sort(Comparator.comparingInt(a -> depth(a.getPath())));
+        } else if (type == Type.RMDIR) {
+            list.sort(Comparator.comparingInt((Action a) -> depth(a.getPath())).reversed());
+        }
+        return list;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        int size = 0;
+        for (List<Action> list : actions.values()) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    /**
+     * Resumen por tipo, p. ej. "MKDIR=1 UPLOAD=12 TOUCH=0 DELETE=3 RMDIR=0".
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Type type : Type.values()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(type).append('=').append(actions.get(type).size());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(summary());
+        for (Type type : Type.values()) {
+            for (Action action : get(type)) {
+                sb.append('\n').append(action);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int depth(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length() - 1; i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recursos que comparten todas las raíces del modo demonio: unos pocos hilos para las pasadas, un pool común
+ * para las subidas y un {@link ConnectionBudget} por servidor. Un servidor recibe como mucho
+ * {@code passThreads} sesiones de control (las de las pasadas en curso) más su cupo de sesiones de transferencia.
+ */
+public class SyncRuntime implements Closeable {
+
+    private final ScheduledExecutorService passExecutor;
+    private final ExecutorService uploadExecutor;
+    private final int defaultConnections;
+    private final Map<String, Integer> serverConnections = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionBudget> budgets = new ConcurrentHashMap<>();
+
+    /**
+     * @param defaultConnections Cupo de sesiones de transferencia de cada servidor sin valor propio
+     */
+    public SyncRuntime(int passThreads, int uploadThreads, int defaultConnections) {
+        this.passExecutor = Executors.newScheduledThreadPool(passThreads, threads("sync-pass"));
+        this.uploadExecutor = Executors.newFixedThreadPool(uploadThreads, threads("sync-upload"));
+        this.defaultConnections = defaultConnections;
+    }
+
+    /**
+     * Fija el cupo de un servidor concreto. Debe llamarse antes de crear la primera raíz que lo use.
+     */
+    public void setConnections(String server, int port, int connections) {
+        serverConnections.put(server + ":" + port, connections);
+    }
+
+    public ConnectionBudget budgetFor(String server, int port) {
+        String key = server + ":" + port;
+        return budgets.computeIfAbsent(key, k -> new ConnectionBudget(serverConnections.getOrDefault(k, defaultConnections)));
+    }
+
+    public ScheduledExecutorService getPassExecutor() {
+        return passExecutor;
+    }
+
+    public ExecutorService getUploadExecutor() {
+        return uploadExecutor;
+    }
+
+    @Override
+    public void close() {
+        passExecutor.shutdown();
+        uploadExecutor.shutdown();
+    }
+
+    private static ThreadFactory threads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> new Thread(r, prefix + "-" + count.incrementAndGet());
+    }
+}
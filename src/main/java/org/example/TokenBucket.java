@@ -0,0 +1,61 @@
+package org.example;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cubo de fichas para limitar la velocidad: se rellena a la velocidad que marca su {@link RateSchedule} y
+ * admite ráfagas de hasta un segundo de envío. Quien pide más de lo que hay queda en deuda y espera lo
+ * necesario para saldarla, así que varios hilos se reparten la velocidad sin colas ni bloqueos largos.
+ */
+public class TokenBucket {
+
+    private static final long RATE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile RateSchedule schedule;
+    private long rate;
+    private long rateCheckedAt;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(RateSchedule schedule) {
+        this.schedule = schedule;
+        this.rateCheckedAt = lastRefill - RATE_CHECK_NANOS;
+    }
+
+    public void setSchedule(RateSchedule schedule) {
+        this.schedule = schedule;
+        synchronized (this) {
+            rateCheckedAt = System.nanoTime() - RATE_CHECK_NANOS;
+        }
+    }
+
+    /**
+     * Descuenta {@code bytes} fichas.
+     *
+     * @return Nanosegundos que hay que esperar antes de enviarlos; 0 si no hay límite o hay fichas de sobra
+     */
+    public synchronized long reserve(long bytes) {
+        long now = System.nanoTime();
+        if (now - rateCheckedAt >= RATE_CHECK_NANOS) {
+            rate = schedule.rateAt(LocalTime.now());
+            rateCheckedAt = now;
+        }
+        if (rate <= 0) {
+            tokens = 0;
+            lastRefill = now;
+            return 0;
+        }
+        tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+    }
+
+    /**
+     * @return Límite vigente en bytes por segundo, o 0 si no hay
+     */
+    public synchronized long getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado de una transferencia encolada en {@link TransferQueue}. Los contadores se actualizan desde los hilos
+ * de subida y se pueden leer desde cualquier hilo (la interfaz los consulta periódicamente).
+ */
+public class Transfer {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private final File file;
+    private final String description;
+    private final long totalBytes;
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private volatile State state = State.QUEUED;
+    private volatile boolean cancelled;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    Transfer(File file, String description, long totalBytes) {
+        this.file = file;
+        this.description = description;
+        this.totalBytes = totalBytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Bytes por segundo desde que empezó la transferencia (hasta que terminó, si ya lo hizo).
+     */
+    public double getThroughput() {
+        long start = startedAt;
+        if (start == 0) {
+            return 0;
+        }
+        long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+        return transferredBytes.get() * 1000.0 / Math.max(1, end - start);
+    }
+
+    /**
+     * Pide la cancelación: si aún no ha empezado no se ejecuta, y si está en curso se corta en la siguiente lectura.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        State current = state;
+        return current == State.DONE || current == State.FAILED || current == State.CANCELLED;
+    }
+
+    /**
+     * Lo llama el flujo de subida por cada bloque leído.
+     *
+     * @throws InterruptedIOException Si se ha pedido la cancelación, para abortar la transferencia en curso
+     */
+    void addBytes(long bytes) throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Transfer cancelled");
+        }
+        transferredBytes.addAndGet(bytes);
+    }
+
+    void started() {
+        startedAt = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    void finished(State finalState, String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        state = finalState;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example;
+
+import java.io.File;
+
+/**
+ * Clases de prioridad de las subidas, de mayor a menor. Deciden el orden en que se lanzan las subidas de una
+ * pasada y el reparto del ancho de banda limitado (ver {@link BandwidthLimiter}).
+ */
+public enum TransferPriority {
+    /** Archivos pequeños, como las fotos */
+    SMALL,
+    /** Archivos grandes modificados hace poco */
+    RECENT,
+    /** El resto: vídeos y demás archivos grandes antiguos */
+    BULK;
+
+    private static final long SMALL_BYTES = Long.getLong("bandwidth.smallBytes", 4L * 1024 * 1024);
+    private static final long RECENT_MILLIS = Long.getLong("bandwidth.recentMinutes", 60) * 60 * 1000;
+
+    /**
+     * Prioridad de una subida de la sincronización en segundo plano, por tamaño y antigüedad
+     * ({@code bandwidth.smallBytes}, {@code bandwidth.recentMinutes}).
+     */
+    public static TransferPriority classify(File file) {
+        if (file.length() < SMALL_BYTES) {
+            return SMALL;
+        }
+        if (System.currentTimeMillis() - file.lastModified() < RECENT_MILLIS) {
+            return RECENT;
+        }
+        return BULK;
+    }
+}
@@ -0,0 +1,137 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cola de transferencias en segundo plano para la interfaz. Mantiene una única sesión de
+ * {@link SincronizadorFTP} mientras no cambien los datos de conexión, y ejecuta las transferencias
+ * de una en una en su propio hilo, así que nunca se conecta ni se transfiere desde el hilo de eventos.
+ */
+public class TransferQueue implements Closeable {
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "transfer-queue");
+        t.setDaemon(true);
+        return t;
+    });
+    // Sólo se usan desde el hilo de la cola
+    private SincronizadorFTP session;
+    private String sessionKey;
+    private volatile Transfer current;
+    private volatile boolean closed;
+
+    /**
+     * Datos de conexión de una petición; si difieren de los de la sesión abierta, se abre otra.
+     */
+    public static class Connection {
+        final File syncDir;
+        final String server;
+        final int port;
+        final String user;
+        final String password;
+
+        public Connection(File syncDir, String server, int port, String user, String password) {
+            this.syncDir = syncDir;
+            this.server = server;
+            this.port = port;
+            this.user = user;
+            this.password = password;
+        }
+
+        String key() {
+            return syncDir.getAbsolutePath() + "|" + server + "|" + port + "|" + user + "|" + password;
+        }
+    }
+
+    /**
+     * Encola la subida de varios archivos, que se ejecutan en el orden recibido.
+     */
+    public List<Transfer> submitUploads(Connection connection, List<File> files, String owner, long lifetime) {
+        List<Transfer> transfers = new ArrayList<>();
+        for (File file : files) {
+            Transfer transfer = new Transfer(file, file.getName(), file.length());
+            transfers.add(transfer);
+            worker.execute(() -> run(transfer, () -> session(connection).upload(file, owner, lifetime, transfer)));
+        }
+        return transfers;
+    }
+
+    public Transfer submitDelete(Connection connection, String filePath, boolean isImage) {
+        Transfer transfer = new Transfer(null, filePath, 0);
+        worker.execute(() -> run(transfer, () -> session(connection).deleteFile(filePath, isImage)));
+        return transfer;
+    }
+
+    /**
+     * Cancela la transferencia en curso y las pendientes, y cierra la sesión desde el hilo de la cola.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Transfer running = current;
+        if (running != null) {
+            running.cancel();
+        }
+        worker.execute(() -> {
+            if (session != null) {
+                session.stopSync();
+                session = null;
+            }
+        });
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Job {
+        void run() throws IOException;
+    }
+
+    private void run(Transfer transfer, Job job) {
+        if (closed || transfer.isCancelled()) {
+            transfer.finished(Transfer.State.CANCELLED, null);
+            return;
+        }
+        current = transfer;
+        transfer.started();
+        try {
+            job.run();
+            transfer.finished(Transfer.State.DONE, null);
+        } catch (IOException e) {
+            // commons-net envuelve la excepción del flujo en CopyStreamException, así que se mira la marca
+            if (transfer.isCancelled()) {
+                Logger.logMessage("Transfer of " + transfer.getDescription() + " cancelled");
+                transfer.finished(Transfer.State.CANCELLED, null);
+                return;
+            }
+            Logger.logError("Transfer of " + transfer.getDescription() + " failed (" + e.getMessage() + ")");
+            transfer.finished(Transfer.State.FAILED, e.getMessage());
+        } finally {
+            current = null;
+        }
+    }
+
+    private SincronizadorFTP session(Connection connection) throws IOException {
+        String key = connection.key();
+        if (session == null || !key.equals(sessionKey)) {
+            if (session != null) {
+                session.stopSync();
+                session = null;
+            }
+            session = new SincronizadorFTP(connection.syncDir, connection.server, connection.port,
+                    connection.user, connection.password);
+            sessionKey = key;
+        }
+        return session;
+    }
+}
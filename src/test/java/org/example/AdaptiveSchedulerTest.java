@@ -0,0 +1,157 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdaptiveSchedulerTest extends TestCase {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Sin cambios el intervalo crece un 50 % hasta el máximo; con cambios se reduce a la mitad hasta el mínimo.
+     */
+    public void testIntervalStaysWithinBounds() throws InterruptedException {
+        List<Boolean> script = Arrays.asList(false, false, false, false, true, true, true);
+        List<Long> intervals = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(script.size());
+        AdaptiveScheduler[] scheduler = new AdaptiveScheduler[1];
+        scheduler[0] = new AdaptiveScheduler("test-pass", () -> {
+            int call = intervals.size();
+            intervals.add(scheduler[0].getInterval());
+            done.countDown();
+            return call < script.size() ? script.get(call) : false;
+        }, 100, 300);
+        try {
+            scheduler[0].start(0);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(100L, 150L, 225L, 300L, 300L, 150L, 100L), intervals.subList(0, script.size()));
+        } finally {
+            scheduler[0].close();
+        }
+    }
+
+    /**
+     * Una pasada más larga que el intervalo deja al menos otro tanto libre antes de la siguiente.
+     */
+    public void testIntervalIsAtLeastThePassDuration() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AdaptiveScheduler scheduler = new AdaptiveScheduler("test-pass", () -> {
+            try {
+                Thread.sleep(250);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+            return true;
+        }, 100, HOUR);
+        try {
+            scheduler.start(0);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getLastDuration() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(scheduler.getLastDuration() >= 250);
+            assertTrue(scheduler.getInterval() >= 250);
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    /**
+     * Las peticiones que llegan mientras una pasada está en curso se funden en una sola pasada más.
+     */
+    public void testRequestsDuringPassAreCoalesced() throws InterruptedException {
+        AtomicInteger passes = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AdaptiveScheduler scheduler = new AdaptiveScheduler("test-pass", () -> {
+            if (passes.incrementAndGet() == 1) {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return false;
+        }, HOUR, HOUR);
+        try {
+            scheduler.start(HOUR);
+            scheduler.requestPass();
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 10; i++) {
+                scheduler.requestPass();
+            }
+            release.countDown();
+            Thread.sleep(500);
+            assertEquals(2, passes.get());
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    /**
+     * Sobre un ejecutor compartido con varios hilos, las tareas de un planificador tampoco se solapan con sus
+     * pasadas.
+     */
+    public void testSharedExecutorKeepsTasksInTurn() throws InterruptedException {
+        ScheduledExecutorService shared = Executors.newScheduledThreadPool(4);
+        AtomicBoolean inPass = new AtomicBoolean();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch taskDone = new CountDownLatch(1);
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(shared, () -> {
+            inPass.set(true);
+            running.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inPass.set(false);
+            return false;
+        }, HOUR, HOUR);
+        try {
+            scheduler.requestPass();
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            scheduler.execute(() -> {
+                overlapped.set(inPass.get());
+                taskDone.countDown();
+            });
+            assertTrue(taskDone.await(5, TimeUnit.SECONDS));
+            assertFalse(overlapped.get());
+        } finally {
+            scheduler.close();
+            shared.shutdownNow();
+        }
+    }
+
+    public void testInvalidBoundsAreRejected() {
+        ScheduledExecutorService shared = Executors.newSingleThreadScheduledExecutor();
+        try {
+            try {
+                new AdaptiveScheduler(shared, () -> false, 0, 100);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                new AdaptiveScheduler(shared, () -> false, 200, 100);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        } finally {
+            shared.shutdownNow();
+        }
+    }
+}
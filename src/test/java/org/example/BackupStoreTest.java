@@ -0,0 +1,54 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class BackupStoreTest extends TestCase {
+
+    /**
+     * El mismo contenido se guarda una sola vez y cada ruta lo enlaza.
+     */
+    public void testSameContentIsStoredOnce() throws Exception {
+        File local = Files.createTempDirectory("originals").toFile();
+        File root = Files.createTempDirectory("backups").toFile();
+        try {
+            File first = new File(local, "first.txt");
+            File second = new File(local, "second.txt");
+            Files.write(first.toPath(), "same".getBytes());
+            Files.write(second.toPath(), "same".getBytes());
+            BackupStore store = new BackupStore(root, 10);
+            store.submit(first, "/a/first.txt");
+            store.submit(second, "/b/second.txt");
+            store.close();
+
+            Path firstView = root.toPath().resolve("files/a/first.txt");
+            Path secondView = root.toPath().resolve("files/b/second.txt");
+            assertEquals("same", new String(Files.readAllBytes(firstView)));
+            assertTrue(Files.isSameFile(firstView, secondView));
+            try (Stream<Path> objects = Files.walk(root.toPath().resolve("objects"))) {
+                assertEquals(1, objects.filter(Files::isRegularFile).count());
+            }
+        } finally {
+            FtpServerFixture.deleteTree(local);
+            FtpServerFixture.deleteTree(root);
+        }
+    }
+
+    /**
+     * Sólo los errores del sistema de archivos dejan de usar enlaces para siempre; los de un archivo concreto no.
+     */
+    public void testOnlyFileSystemErrorsDisableLinks() {
+        assertTrue(BackupStore.linksUnsupported(new FileSystemException("view", "object", "Invalid cross-device link")));
+        assertTrue(BackupStore.linksUnsupported(new FileSystemException("view", "object", "Operation not supported")));
+        assertFalse(BackupStore.linksUnsupported(new FileSystemException("view", "object", "Too many links")));
+        assertFalse(BackupStore.linksUnsupported(new AccessDeniedException("view")));
+        assertFalse(BackupStore.linksUnsupported(new IOException("No space left on device")));
+    }
+}
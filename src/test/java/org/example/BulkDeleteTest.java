@@ -0,0 +1,106 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BulkDeleteTest extends TestCase {
+
+    private FtpServerFixture server;
+    private FTPConnectionPool pool;
+    private ExecutorService executor;
+    private BulkDelete bulk;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FtpServerFixture(FtpServerFixture.rejecting(550, "locked", "MLSD", "LIST"));
+        pool = server.newPool(3);
+        executor = Executors.newFixedThreadPool(3);
+        bulk = new BulkDelete(pool, executor);
+        create("a.txt", "b.txt", "a.log", "docs/x1.log", "docs/x22.log", "docs/sub/x3.log", "fotos/2024/img.jpg");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.close();
+        executor.shutdownNow();
+        server.close();
+    }
+
+    public void testExactPathsAndGlobs() throws IOException {
+        List<List<String>> matches = bulk.resolve(Arrays.asList("/a.txt", "/*.txt", "/docs/x?.log", "/*/x*.log", "/docs",
+                "/fotos/*/", "/missing.txt"));
+        assertEquals(Collections.singletonList("/a.txt"), matches.get(0));
+        assertEquals(Arrays.asList("/a.txt", "/b.txt"), sorted(matches.get(1)));
+        assertEquals(Collections.singletonList("/docs/x1.log"), matches.get(2));
+        assertEquals(Arrays.asList("/docs/x1.log", "/docs/x22.log"), sorted(matches.get(3)));
+        assertEquals(Collections.singletonList("/docs/"), matches.get(4));
+        assertEquals(Collections.singletonList("/fotos/2024/"), matches.get(5));
+        assertTrue(matches.get(6).isEmpty());
+    }
+
+    /**
+     * La raíz, una ruta vacía y cualquier tramo "." o ".." no encuentran nada, aunque el resto de la ruta exista.
+     */
+    public void testUnsafePathsMatchNothing() throws IOException {
+        List<String> unsafe = Arrays.asList("/", "", "//", "/..", "/docs/..", "/docs/../a.txt", "/./a.txt", "/*/..");
+        for (String path : unsafe) {
+            assertFalse(path, BulkDelete.isSafe(path));
+        }
+        for (List<String> found : bulk.resolve(unsafe)) {
+            assertTrue(found.isEmpty());
+        }
+        assertTrue(BulkDelete.isSafe("/docs/x1.log"));
+        assertTrue(BulkDelete.isSafe("docs"));
+    }
+
+    public void testDuplicatePatternsKeepTheirOwnResult() throws IOException {
+        List<List<String>> matches = bulk.resolve(Arrays.asList("/a.txt", "/a.txt"));
+        assertEquals(2, matches.size());
+        assertEquals(matches.get(0), matches.get(1));
+    }
+
+    public void testRemoveTree() throws Exception {
+        BulkDelete.Result result = bulk.remove("/docs/").get();
+        assertEquals(BulkDelete.Status.DELETED, result.getStatus());
+        assertEquals(3, result.getDeletedFiles().size());
+        assertEquals(Arrays.asList("/docs/sub/", "/docs/"), result.getDeletedDirs());
+        assertFalse(new File(server.getHome(), "docs").exists());
+        assertTrue(new File(server.getHome(), "a.log").exists());
+    }
+
+    /**
+     * Un subdirectorio que no se puede listar no se da por vacío: se borra lo demás, pero ni él ni sus padres.
+     */
+    public void testUnlistableSubtreeIsKept() throws Exception {
+        create("docs/locked/keep.txt");
+        BulkDelete.Result result = bulk.remove("/docs/").get();
+        assertEquals(BulkDelete.Status.PARTIAL, result.getStatus());
+        assertEquals(3, result.getDeletedFiles().size());
+        assertEquals(Collections.singletonList("/docs/sub/"), result.getDeletedDirs());
+        assertTrue(result.getFailures().toString(), result.getFailures().stream().anyMatch(f -> f.startsWith("/docs/locked/:")));
+        assertTrue(new File(server.getHome(), "docs/locked/keep.txt").exists());
+    }
+
+    private void create(String... paths) throws IOException {
+        for (String path : paths) {
+            File file = new File(server.getHome(), path);
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), path.getBytes());
+        }
+    }
+
+    private static List<String> sorted(List<String> paths) {
+        List<String> copy = new ArrayList<>(paths);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionSupervisorTest extends TestCase {
+
+    /**
+     * En modo compartido no se conecta al crearlo, y con el servidor caído cada comprobación hace un único
+     * intento y vuelve, en vez de quedarse reintentando en un hilo que comparten todas las raíces.
+     */
+    public void testSharedSupervisorGivesUpAfterOneAttempt() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        FTPConnectionPool pool = new FTPConnectionPool("localhost", port, "user", "password", 1);
+        ConnectionSupervisor supervisor = new ConnectionSupervisor(pool, true);
+        try {
+            assertFalse(supervisor.client().isConnected());
+            long start = System.currentTimeMillis();
+            assertFalse(supervisor.ensureConnected());
+            assertFalse(supervisor.reconnect());
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            supervisor.close();
+            pool.close();
+        }
+    }
+
+    public void testSharedSupervisorConnectsOnFirstUse() throws Exception {
+        try (FtpServerFixture server = new FtpServerFixture()) {
+            FTPConnectionPool pool = server.newPool(1);
+            ConnectionSupervisor supervisor = new ConnectionSupervisor(pool, true);
+            try {
+                assertTrue(supervisor.ensureConnected());
+                assertTrue(supervisor.isAlive());
+            } finally {
+                supervisor.close();
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Cada sesión nueva (primera conexión, vuelta de una suspensión, reconexión) pasa por la preparación.
+     */
+    public void testSessionSetupRunsOnEveryNewSession() throws Exception {
+        try (FtpServerFixture server = new FtpServerFixture()) {
+            FTPConnectionPool pool = server.newPool(1);
+            ConnectionSupervisor supervisor = new ConnectionSupervisor(pool, true);
+            AtomicInteger sessions = new AtomicInteger();
+            supervisor.setSessionSetup(client -> {
+                assertTrue(client.isConnected());
+                sessions.incrementAndGet();
+            });
+            try {
+                assertTrue(supervisor.ensureConnected());
+                assertEquals(1, sessions.get());
+                assertTrue(supervisor.ensureConnected());
+                assertEquals(1, sessions.get());
+                supervisor.suspend();
+                assertTrue(supervisor.ensureConnected());
+                assertEquals(2, sessions.get());
+                assertTrue(supervisor.reconnect());
+                assertEquals(3, sessions.get());
+            } finally {
+                supervisor.close();
+                pool.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class DirectoryWatcherTest extends TestCase {
+
+    private static final long QUIET_MILLIS = 300;
+    private static final long MAX_DELAY_MILLIS = 1000;
+
+    private final BlockingQueue<Set<Path>> batches = new LinkedBlockingQueue<>();
+    private Path root;
+    private DirectoryWatcher watcher;
+
+    @Override
+    protected void setUp() throws IOException {
+        root = Files.createTempDirectory("watched").toRealPath();
+        watcher = new DirectoryWatcher(root, QUIET_MILLIS, MAX_DELAY_MILLIS, batches::add, () -> { });
+        watcher.start();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        watcher.close();
+        FtpServerFixture.deleteTree(root.toFile());
+    }
+
+    /**
+     * Una ráfaga de cambios sale en un solo lote cuando llega el silencio, con cada ruta una vez.
+     */
+    public void testBurstIsDeliveredOnce() throws Exception {
+        Set<Path> written = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = root.resolve("f" + i + ".txt");
+            Files.write(file, "first".getBytes());
+            Files.write(file, "second".getBytes());
+            written.add(file);
+        }
+        Set<Path> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertEquals(written, batch);
+        assertNull(batches.poll(QUIET_MILLIS * 2, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Un directorio nuevo se empieza a vigilar y lo que ya contenía entra en el lote.
+     */
+    public void testNewDirectoryIsWatchedWithItsContents() throws Exception {
+        Path dir = root.resolve("new/nested");
+        Files.createDirectories(dir);
+        Path early = dir.resolve("early.txt");
+        Files.write(early, "copied with the directory".getBytes());
+
+        Set<Path> seen = new HashSet<>(batches.poll(5, TimeUnit.SECONDS));
+        assertTrue(seen.toString(), seen.contains(root.resolve("new")));
+        Set<Path> more;
+        while ((more = batches.poll(QUIET_MILLIS * 2, TimeUnit.MILLISECONDS)) != null) {
+            seen.addAll(more);
+        }
+        assertTrue(seen.toString(), seen.contains(early));
+
+        Path late = dir.resolve("late.txt");
+        Files.write(late, "after registration".getBytes());
+        assertEquals(Set.of(late), batches.poll(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Con escrituras continuas nunca hay silencio, pero cada lote sale como mucho {@code maxDelayMillis} después
+     * de su primer evento.
+     */
+    public void testContinuousWritesAreDeliveredByMaxDelay() throws Exception {
+        File file = root.resolve("log.txt").toFile();
+        long start = System.currentTimeMillis();
+        Set<Path> first = null;
+        while (System.currentTimeMillis() - start < MAX_DELAY_MILLIS * 3) {
+            Files.write(file.toPath(), String.valueOf(System.nanoTime()).getBytes());
+            Thread.sleep(50);
+            if (first == null) {
+                first = batches.poll();
+                if (first != null) {
+                    assertTrue(System.currentTimeMillis() - start < MAX_DELAY_MILLIS + QUIET_MILLIS);
+                }
+            }
+        }
+        assertEquals(Set.of(file.toPath()), first);
+    }
+}
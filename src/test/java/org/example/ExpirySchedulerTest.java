@@ -0,0 +1,82 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ExpirySchedulerTest extends TestCase {
+
+    private static final long WINDOW = 300;
+
+    private final BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+    private final ExpiryScheduler scheduler = new ExpiryScheduler(batches::add, WINDOW);
+
+    @Override
+    protected void tearDown() {
+        scheduler.close();
+    }
+
+    public void testOwnThread() throws InterruptedException {
+        scheduler.start();
+        checkOrderAndBatches();
+    }
+
+    public void testSharedExecutor() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.start(executor);
+            checkOrderAndBatches();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Lo que vence dentro de la ventana sale en un solo lote, por orden de vencimiento y aunque se registrara
+     * desordenado; un plazo sustituido o cancelado no sale con el antiguo.
+     */
+    private void checkOrderAndBatches() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        scheduler.schedule("/late.txt", now + 2000);
+        scheduler.schedule("/b.txt", now + 200);
+        scheduler.schedule("/a.txt", now + 100);
+        scheduler.schedule("/moved.txt", now + 150);
+        scheduler.schedule("/moved.txt", now + 1500);
+        scheduler.schedule("/cancelled.txt", now + 120);
+        scheduler.cancel("/cancelled.txt");
+        assertEquals(4, scheduler.size());
+
+        List<String> first = batches.poll(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("/a.txt", "/b.txt"), first);
+        assertTrue(System.currentTimeMillis() >= now + 100 + WINDOW);
+
+        assertEquals(Arrays.asList("/moved.txt"), batches.poll(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("/late.txt"), batches.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.size());
+        assertNull(batches.poll(WINDOW * 2, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Un plazo anterior al que esperaba el planificador lo adelanta.
+     */
+    public void testEarlierDeadlineWakesScheduler() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.start(executor);
+            long now = System.currentTimeMillis();
+            scheduler.schedule("/later.txt", now + 60_000);
+            scheduler.schedule("/sooner.txt", now + 50);
+            assertEquals(Collections.singletonList("/sooner.txt"), batches.poll(5, TimeUnit.SECONDS));
+            assertEquals(1, scheduler.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
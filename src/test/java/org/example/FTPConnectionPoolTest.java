@@ -0,0 +1,74 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class FTPConnectionPoolTest extends TestCase {
+
+    // Menos que la espera de seguridad del pool: sólo se cumple si el aviso llega
+    private static final long WAKE_MILLIS = 700;
+
+    private FtpServerFixture server;
+    private FTPConnectionPool pool;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FtpServerFixture();
+        pool = server.newPool(1);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        pool.close();
+        server.close();
+    }
+
+    public void testInvalidateWakesWaitingBorrower() throws Exception {
+        FTPClient first = pool.borrow();
+        Future<FTPClient> waiting = executor.submit(() -> pool.borrow());
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        pool.invalidate(first);
+        FTPClient second = waiting.get(WAKE_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(second.isConnected());
+        pool.release(second);
+    }
+
+    public void testCloseFailsWaitingBorrower() throws Exception {
+        FTPClient first = pool.borrow();
+        Future<FTPClient> waiting = executor.submit(() -> pool.borrow());
+        Thread.sleep(100);
+
+        pool.close();
+        try {
+            waiting.get(WAKE_MILLIS, TimeUnit.MILLISECONDS);
+            fail("Borrow should fail once the pool is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        pool.release(first);
+    }
+
+    public void testBorrowTimesOut() throws Exception {
+        FTPClient first = pool.borrow();
+        long start = System.currentTimeMillis();
+        try {
+            pool.borrow(200);
+            fail("Borrow should time out while the only session is in use");
+        } catch (IOException expected) {
+            assertTrue(System.currentTimeMillis() - start < WAKE_MILLIS);
+        }
+        pool.release(first);
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class FanOutReaderTest extends TestCase {
+
+    private static final long STALL_MILLIS = 200;
+
+    private File file;
+    private byte[] content;
+
+    @Override
+    protected void setUp() throws IOException {
+        content = new byte[2 * 1024 * 1024 + 12345];
+        new Random(17).nextBytes(content);
+        file = Files.createTempFile("fanout", ".bin").toFile();
+        Files.write(file.toPath(), content);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Un destino que deja de leer con la cola llena se desengancha sin frenar a los demás; después vacía su
+     * cola y sigue leyendo el archivo desde donde iba.
+     */
+    public void testSlowConsumerIsDetachedAndContinuesOnItsOwn() throws Exception {
+        FanOutReader reader = new FanOutReader(file, 2, 4, STALL_MILLIS);
+        InputStream slow = reader.stream(1);
+        byte[] head = new byte[100_000];
+        Thread readerThread = new Thread(reader);
+        readerThread.start();
+        int read = 0;
+        while (read < head.length) {
+            read += slow.read(head, read, head.length - read);
+        }
+
+        byte[][] fast = new byte[1][];
+        Thread fastThread = new Thread(() -> fast[0] = readAll(reader.stream(0)));
+        fastThread.start();
+        fastThread.join(10000);
+        readerThread.join(10000);
+        assertFalse(readerThread.isAlive());
+        assertTrue(Arrays.equals(content, fast[0]));
+
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        all.write(head);
+        all.write(readAll(slow));
+        assertTrue(Arrays.equals(content, all.toByteArray()));
+    }
+
+    /**
+     * Si el lector no llega a empezar (p. ej. encolado en un ejecutor lleno), el destino no lo espera más de
+     * {@code stallMillis} y lee el archivo por su cuenta.
+     */
+    public void testConsumerDoesNotWaitForReaderThatNeverStarts() {
+        FanOutReader reader = new FanOutReader(file, 2, 4, STALL_MILLIS);
+        long start = System.currentTimeMillis();
+        assertTrue(Arrays.equals(content, readAll(reader.stream(0))));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= STALL_MILLIS && elapsed < 5000);
+    }
+
+    /**
+     * Un destino que cierra su flujo deja de recibir bloques y no retiene a los demás.
+     */
+    public void testClosedConsumerStopsReceiving() throws Exception {
+        FanOutReader reader = new FanOutReader(file, 2, 4, 60000);
+        reader.stream(1).close();
+        Thread readerThread = new Thread(reader);
+        readerThread.start();
+        assertTrue(Arrays.equals(content, readAll(reader.stream(0))));
+        readerThread.join(5000);
+        assertFalse(readerThread.isAlive());
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
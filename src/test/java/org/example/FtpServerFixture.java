@@ -0,0 +1,120 @@
+package org.example;
+
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Apache FtpServer en el proceso de las pruebas, sobre un directorio temporal y en un puerto libre.
+ * Al cerrarlo se borra el directorio.
+ */
+public class FtpServerFixture implements Closeable {
+
+    public static final String USER = "Admin";
+    public static final String PASSWORD = "Admin1.";
+    private static final int MAX_LOGINS = 50;
+
+    private final FtpServer server;
+    private final File home;
+    private final int port;
+
+    public FtpServerFixture() throws IOException, FtpException {
+        this(new Ftplet[0]);
+    }
+
+    /**
+     * @param ftplets Interceptan las órdenes del servidor, para simular errores o latencia
+     */
+    public FtpServerFixture(Ftplet... ftplets) throws IOException, FtpException {
+        home = Files.createTempDirectory("ftp-home").toFile();
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(0);
+        serverFactory.addListener("default", listenerFactory.createListener());
+        Map<String, Ftplet> named = new HashMap<>();
+        for (int i = 0; i < ftplets.length; i++) {
+            named.put("fixture-" + i, ftplets[i]);
+        }
+        serverFactory.setFtplets(named);
+
+        BaseUser user = new BaseUser();
+        user.setName(USER);
+        user.setPassword(PASSWORD);
+        user.setHomeDirectory(home.getAbsolutePath());
+        List<Authority> authorities = List.of(new WritePermission(), new ConcurrentLoginPermission(MAX_LOGINS, MAX_LOGINS));
+        user.setAuthorities(authorities);
+        serverFactory.setUserManager(new PropertiesUserManagerFactory().createUserManager());
+        serverFactory.getUserManager().save(user);
+
+        server = serverFactory.createServer();
+        server.start();
+        port = serverFactory.getListener("default").getPort();
+    }
+
+    /**
+     * Ftplet que rechaza con {@code code} las órdenes {@code commands} sobre cualquier ruta que contenga
+     * {@code marker}, p. ej. 550 para MLSD y LIST o 450 para DELE.
+     */
+    public static Ftplet rejecting(int code, String marker, String... commands) {
+        List<String> rejected = List.of(commands);
+        return new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) throws FtpException {
+                if (rejected.contains(request.getCommand())
+                        && request.hasArgument() && request.getArgument().contains(marker)) {
+                    session.write(new DefaultFtpReply(code, request.getCommand() + " refused"));
+                    return FtpletResult.SKIP;
+                }
+                return FtpletResult.DEFAULT;
+            }
+        };
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public File getHome() {
+        return home;
+    }
+
+    public FTPConnectionPool newPool(int size) {
+        return new FTPConnectionPool("localhost", port, USER, PASSWORD, size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop();
+        deleteTree(home);
+    }
+
+    static void deleteTree(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
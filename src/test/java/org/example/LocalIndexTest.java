@@ -0,0 +1,98 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class LocalIndexTest extends TestCase {
+
+    private File dir;
+    private File indexFile;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("index").toFile();
+        indexFile = new File(dir, "local.index");
+        file = new File(dir, "data.txt");
+        Files.write(file.toPath(), "content".getBytes());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FtpServerFixture.deleteTree(dir);
+    }
+
+    public void testRoundTrip() throws IOException {
+        byte[] hash = {1, 2, 3, 4};
+        LocalIndex index = new LocalIndex(indexFile);
+        index.record("/data.txt", file, hash);
+        index.record("/sin-hash.txt", file, null);
+        index.record("/año/ñandú.txt", file, null);
+        index.save();
+
+        LocalIndex loaded = new LocalIndex(indexFile);
+        loaded.load();
+        assertEquals(3, loaded.size());
+        assertTrue(loaded.isUnchanged("/data.txt", file));
+        assertTrue(Arrays.equals(hash, loaded.get("/data.txt").getHash()));
+        assertNull(loaded.get("/sin-hash.txt").getHash());
+        assertEquals(file.length(), loaded.get("/año/ñandú.txt").getSize());
+        assertEquals(file.lastModified(), loaded.get("/año/ñandú.txt").getLastModified());
+    }
+
+    /**
+     * Con la longitud en 16 bits, una ruta de más de 65535 bytes descolocaba todas las entradas siguientes.
+     */
+    public void testPathLongerThanShortLength() throws IOException {
+        char[] segment = new char[70_000];
+        Arrays.fill(segment, 'x');
+        String longPath = "/" + new String(segment);
+        LocalIndex index = new LocalIndex(indexFile);
+        index.record(longPath, file, null);
+        index.record("/data.txt", file, new byte[]{9});
+        index.save();
+
+        LocalIndex loaded = new LocalIndex(indexFile);
+        loaded.load();
+        assertEquals(2, loaded.size());
+        assertNotNull(loaded.get(longPath));
+        assertTrue(Arrays.equals(new byte[]{9}, loaded.get("/data.txt").getHash()));
+    }
+
+    public void testLoadsVersion1() throws IOException {
+        byte[] path = "/data.txt".getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile))) {
+            out.writeInt(0x46494458);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeShort(path.length);
+            out.write(path);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeByte(0);
+        }
+
+        LocalIndex loaded = new LocalIndex(indexFile);
+        loaded.load();
+        assertTrue(loaded.isUnchanged("/data.txt", file));
+    }
+
+    public void testTruncatedIndexIsIgnored() throws IOException {
+        LocalIndex index = new LocalIndex(indexFile);
+        index.record("/data.txt", file, null);
+        index.save();
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        Files.write(indexFile.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        LocalIndex loaded = new LocalIndex(indexFile);
+        loaded.load();
+        assertEquals(0, loaded.size());
+    }
+}
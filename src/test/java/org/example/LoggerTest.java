@@ -0,0 +1,31 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class LoggerTest extends TestCase {
+
+    public void testOverflowPolicyIsParsedLeniently() {
+        assertEquals(Logger.OverflowPolicy.BLOCK, Logger.parseOverflowPolicy(null));
+        assertEquals(Logger.OverflowPolicy.BLOCK, Logger.parseOverflowPolicy(""));
+        assertEquals(Logger.OverflowPolicy.DROP, Logger.parseOverflowPolicy(" drop "));
+        assertEquals(Logger.OverflowPolicy.BLOCK, Logger.parseOverflowPolicy("BLOCK"));
+    }
+
+    /**
+     * Un valor desconocido no impide usar el registro: se avisa por la salida de error y se espera.
+     */
+    public void testUnknownOverflowPolicyFallsBackToBlock() {
+        PrintStream err = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(captured, true));
+        try {
+            assertEquals(Logger.OverflowPolicy.BLOCK, Logger.parseOverflowPolicy("discard"));
+        } finally {
+            System.setErr(err);
+        }
+        assertTrue(captured.toString(), captured.toString().contains("'discard'"));
+    }
+}
@@ -0,0 +1,97 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+public class MetadataJournalTest extends TestCase {
+
+    private File dir;
+    private Map<String, String> owners;
+    private Map<String, Long> lifetimes;
+    private MetadataJournal journal;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal").toFile();
+        journal = reopen();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        journal.close();
+        FtpServerFixture.deleteTree(dir);
+    }
+
+    public void testReplayRestoresState() throws IOException {
+        journal.putOwner("/a.txt", "user");
+        journal.putOwner("/b.txt", "admin");
+        journal.putLifetime("/b.txt", 1234L);
+        journal.putPendingUpload("/big.bin", 10, 20);
+        journal.removeOwner("/a.txt");
+        journal.close();
+
+        journal = reopen();
+        assertEquals(1, owners.size());
+        assertEquals("admin", owners.get("/b.txt"));
+        assertEquals(Long.valueOf(1234L), lifetimes.get("/b.txt"));
+        assertTrue(journal.isPendingUpload("/big.bin", 10, 20));
+        assertFalse(journal.isPendingUpload("/big.bin", 10, 21));
+    }
+
+    /**
+     * Un corte a mitad de registro deja una cola incompleta: se descarta, el archivo se trunca y lo que se
+     * añade después se vuelve a leer bien.
+     */
+    public void testTornTailIsDiscardedAndTruncated() throws IOException {
+        journal.putOwner("/a.txt", "user");
+        journal.close();
+        File journalFile = new File(dir, MetadataJournal.JOURNAL_FILE);
+        long validLength = journalFile.length();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            // Longitud de un registro de 40 bytes y sólo parte del cuerpo
+            out.write(new byte[]{0, 0, 0, 40, 1, 0, 5});
+        }
+
+        journal = reopen();
+        assertEquals("user", owners.get("/a.txt"));
+        assertEquals(validLength, journalFile.length());
+
+        journal.putOwner("/c.txt", "user");
+        journal.close();
+        journal = reopen();
+        assertEquals(2, owners.size());
+    }
+
+    public void testCorruptRecordStopsReplay() throws IOException {
+        journal.putOwner("/a.txt", "user");
+        journal.sync();
+        long firstLength = new File(dir, MetadataJournal.JOURNAL_FILE).length();
+        journal.putOwner("/b.txt", "user");
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, MetadataJournal.JOURNAL_FILE), "rw")) {
+            // Un byte del cuerpo del segundo registro: el CRC ya no cuadra
+            file.seek(firstLength + 6);
+            file.write('X');
+        }
+
+        journal = reopen();
+        assertEquals(1, owners.size());
+        assertEquals("user", owners.get("/a.txt"));
+        assertEquals(firstLength, new File(dir, MetadataJournal.JOURNAL_FILE).length());
+    }
+
+    private MetadataJournal reopen() throws IOException {
+        owners = new HashMap<>();
+        lifetimes = new HashMap<>();
+        MetadataJournal reopened = new MetadataJournal(dir, owners, lifetimes);
+        reopened.open();
+        return reopened;
+    }
+}
@@ -0,0 +1,152 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class MirrorSyncTest extends TestCase {
+
+    /**
+     * Retrasa las órdenes elegidas del espejo lento y cuenta sus listados.
+     */
+    private static class Latency extends DefaultFtplet {
+        volatile List<String> commands = List.of();
+        volatile long delayMillis;
+        final AtomicInteger listings = new AtomicInteger();
+
+        @Override
+        public FtpletResult beforeCommand(FtpSession session, FtpRequest request) {
+            String command = request.getCommand();
+            if (command.equals("MLSD") || command.equals("LIST")) {
+                listings.incrementAndGet();
+            }
+            if (commands.contains(command)) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return FtpletResult.DEFAULT;
+        }
+    }
+
+    private final Latency latency = new Latency();
+    private FtpServerFixture primary;
+    private FtpServerFixture fast;
+    private FtpServerFixture slow;
+    private File local;
+    private MirrorSync mirror;
+
+    @Override
+    protected void setUp() throws Exception {
+        primary = new FtpServerFixture();
+        fast = new FtpServerFixture();
+        slow = new FtpServerFixture(latency);
+        local = Files.createTempDirectory("mirrored").toFile();
+        mirror = new MirrorSync(local, 2, null);
+        mirror.addTarget("primary", "localhost", primary.getPort(), FtpServerFixture.USER, FtpServerFixture.PASSWORD);
+        mirror.addTarget("fast", "localhost", fast.getPort(), FtpServerFixture.USER, FtpServerFixture.PASSWORD);
+        mirror.addTarget("slow", "localhost", slow.getPort(), FtpServerFixture.USER, FtpServerFixture.PASSWORD);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mirror.stopSync();
+        primary.close();
+        fast.close();
+        slow.close();
+        FtpServerFixture.deleteTree(local);
+    }
+
+    /**
+     * El espejo que tarda en empezar a subir llena su cola de la lectura compartida y se desengancha: los otros
+     * dos terminan sin esperarle y él vacía su cola y lee el resto del archivo por su cuenta.
+     */
+    public void testSlowUploaderIsDetachedFromSharedRead() throws Exception {
+        latency.commands = List.of("STOR");
+        latency.delayMillis = 1500;
+        mirror.setTimeouts(10000, 200);
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        Files.write(new File(local, "big.bin").toPath(), content);
+        long logStart = new File(Logger.SYNC_LOG_PATH).length();
+
+        assertTrue(mirror.pass());
+        waitFor(() -> hasContent(primary, "big.bin", content) && hasContent(fast, "big.bin", content));
+        assertFalse(hasContent(slow, "big.bin", content));
+        waitFor(() -> hasContent(slow, "big.bin", content));
+        assertTrue(logSince(logStart).contains("Slow target detached from shared read of"));
+    }
+
+    /**
+     * El espejo que tarda en listar no retiene la pasada: sube sus archivos por su cuenta, y mientras sigue
+     * ocupado las pasadas siguientes no le incluyen.
+     */
+    public void testSlowListerFallsBackAndSitsOutWhileBusy() throws Exception {
+        latency.commands = List.of("MLSD", "LIST");
+        latency.delayMillis = 1500;
+        mirror.setTimeouts(300, 200);
+        byte[] content = "mirrored".getBytes(StandardCharsets.UTF_8);
+        Files.write(new File(local, "a.txt").toPath(), content);
+
+        long start = System.currentTimeMillis();
+        assertTrue(mirror.pass());
+        assertTrue(System.currentTimeMillis() - start < latency.delayMillis);
+        assertEquals(1, latency.listings.get());
+
+        // Sigue listando: la pasada siguiente no le espera ni le vuelve a listar
+        mirror.pass();
+        assertEquals(1, latency.listings.get());
+        waitFor(() -> hasContent(primary, "a.txt", content) && hasContent(slow, "a.txt", content));
+
+        latency.delayMillis = 0;
+        waitFor(() -> {
+            mirror.pass();
+            return latency.listings.get() > 1;
+        });
+    }
+
+    private static boolean hasContent(FtpServerFixture server, String name, byte[] content) {
+        File file = new File(server.getHome(), name);
+        if (file.length() != content.length) {
+            return false;
+        }
+        try {
+            return Arrays.equals(content, Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    private static String logSince(long offset) throws IOException {
+        Logger.flush();
+        try (RandomAccessFile log = new RandomAccessFile(Logger.SYNC_LOG_PATH, "r")) {
+            byte[] appended = new byte[(int) Math.max(0, log.length() - offset)];
+            log.seek(Math.min(offset, log.length()));
+            log.readFully(appended);
+            return new String(appended, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.time.LocalTime;
+
+public class RateScheduleTest extends TestCase {
+
+    public void testFixedRates() {
+        assertEquals(4L * 1024 * 1024, RateSchedule.parse("4M").rateAt(LocalTime.NOON));
+        assertEquals(512L * 1024, RateSchedule.parse(" 512k ").rateAt(LocalTime.MIDNIGHT));
+        assertEquals(1536L * 1024 * 1024, RateSchedule.parse("1.5G").rateAt(LocalTime.NOON));
+        assertEquals(100, RateSchedule.parse("100").rateAt(LocalTime.NOON));
+        assertEquals(0, RateSchedule.parse("0").rateAt(LocalTime.NOON));
+        assertSame(RateSchedule.UNLIMITED, RateSchedule.parse(null));
+        assertSame(RateSchedule.UNLIMITED, RateSchedule.parse("  "));
+    }
+
+    /**
+     * El inicio de un tramo entra y el fin no; un tramo con el fin antes que el inicio cruza la medianoche.
+     */
+    public void testWindowsAcrossMidnight() {
+        RateSchedule schedule = RateSchedule.parse("08:00-18:00=512K,18:00-08:00=8M");
+        assertEquals(512L * 1024, schedule.rateAt(LocalTime.of(8, 0)));
+        assertEquals(512L * 1024, schedule.rateAt(LocalTime.of(17, 59, 59)));
+        assertEquals(8L * 1024 * 1024, schedule.rateAt(LocalTime.of(18, 0)));
+        assertEquals(8L * 1024 * 1024, schedule.rateAt(LocalTime.MIDNIGHT));
+        assertEquals(8L * 1024 * 1024, schedule.rateAt(LocalTime.of(7, 59)));
+    }
+
+    public void testOutsideWindowsIsUnlimited() {
+        RateSchedule schedule = RateSchedule.parse("09:00-17:00=1M");
+        assertEquals(1024 * 1024, schedule.rateAt(LocalTime.of(12, 30)));
+        assertEquals(0, schedule.rateAt(LocalTime.of(17, 0)));
+        assertEquals(0, schedule.rateAt(LocalTime.of(8, 59)));
+    }
+
+    public void testInvalidSpecs() {
+        for (String spec : new String[]{"fast", "4X", "08:00=1M", "08:00-25:00=1M", "08:00-18:00", "08:00-18:00=1M,="}) {
+            try {
+                RateSchedule.parse(spec);
+                fail("Accepted " + spec);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
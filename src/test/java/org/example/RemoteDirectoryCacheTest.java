@@ -0,0 +1,96 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RemoteDirectoryCacheTest extends TestCase {
+
+    private static final int THREADS = 8;
+
+    private final AtomicInteger mkd = new AtomicInteger();
+    private FtpServerFixture server;
+    private FTPConnectionPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FtpServerFixture(new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) {
+                if (request.getCommand().equals("MKD")) {
+                    mkd.incrementAndGet();
+                }
+                return FtpletResult.DEFAULT;
+            }
+        });
+        pool = server.newPool(THREADS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.close();
+        server.close();
+    }
+
+    /**
+     * Varias subidas a la vez al mismo directorio nuevo envían un solo MKD por nivel; después no se envía nada.
+     */
+    public void testConcurrentEnsureCreatesEachLevelOnce() throws Exception {
+        RemoteDirectoryCache cache = new RemoteDirectoryCache();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                String dir = i % 2 == 0 ? "/a/b/c" : "/a/b/c/";
+                results.add(executor.submit(() -> {
+                    FTPClient client = pool.borrow();
+                    try {
+                        go.await();
+                        cache.ensure(client, dir);
+                    } finally {
+                        pool.release(client);
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(3, mkd.get());
+        assertTrue(new File(server.getHome(), "a/b/c").isDirectory());
+        assertTrue(cache.contains("/a/") && cache.contains("/a/b/") && cache.contains("/a/b/c/"));
+
+        FTPClient client = pool.borrow();
+        try {
+            cache.ensure(client, "/a/b/c");
+            assertEquals(3, mkd.get());
+
+            // Tras invalidar, un directorio que ya existe en el servidor se acepta sin error
+            cache.invalidate("/a/b/");
+            assertFalse(cache.contains("/a/b/c/"));
+            assertTrue(cache.contains("/a/"));
+            cache.ensure(client, "/a/b/c/d");
+            assertEquals(6, mkd.get());
+            assertTrue(new File(server.getHome(), "a/b/c/d").isDirectory());
+        } finally {
+            pool.release(client);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RemoteSnapshotTest extends TestCase {
+
+    private FtpServerFixture server;
+    private FTPConnectionPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FtpServerFixture(FtpServerFixture.rejecting(550, "locked", "MLSD", "LIST"));
+        pool = server.newPool(1);
+        for (String path : new String[]{"a.txt", "docs/b.txt", "docs/locked/c.txt"}) {
+            File file = new File(server.getHome(), path);
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), path.getBytes());
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.close();
+        server.close();
+    }
+
+    /**
+     * Un directorio que el servidor no deja listar no puede tomarse por vacío: el recorrido falla y la sesión
+     * sigue sirviendo para repetirlo.
+     */
+    public void testRejectedListingFailsTheWalk() throws IOException {
+        FTPClient client = pool.borrow();
+        try {
+            try {
+                RemoteSnapshot.walk(client, dir -> true, batch -> { });
+                fail("Listing of /docs/locked/ was refused");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("/docs/locked/"));
+            }
+
+            List<String> seen = new ArrayList<>();
+            RemoteSnapshot snapshot = RemoteSnapshot.walk(client, dir -> !dir.contains("locked"),
+                    batch -> batch.forEach(entry -> seen.add(entry.getPath())));
+            assertTrue(seen.contains("/docs/locked/"));
+            assertTrue(snapshot.hasDirectory("/docs/locked/"));
+            assertEquals(4, snapshot.size());
+        } finally {
+            pool.release(client);
+        }
+    }
+}
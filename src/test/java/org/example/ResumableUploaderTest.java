@@ -0,0 +1,114 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ResumableUploaderTest extends TestCase {
+
+    private FtpServerFixture server;
+    private FTPConnectionPool pool;
+    private ExecutorService segmentExecutor;
+    private ResumableUploader uploader;
+    private File local;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FtpServerFixture();
+        pool = server.newPool(4);
+        segmentExecutor = Executors.newCachedThreadPool();
+        uploader = new ResumableUploader(pool, segmentExecutor, new BandwidthLimiter(RateSchedule.UNLIMITED),
+                "localhost", server.getPort());
+        local = File.createTempFile("upload", ".bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.close();
+        segmentExecutor.shutdownNow();
+        server.close();
+        Files.deleteIfExists(local.toPath());
+    }
+
+    /**
+     * Apache FtpServer trunca el archivo en la posición del REST: con trozos en paralelo quedarían huecos a
+     * cero con el tamaño correcto, así que el troceado se tiene que desactivar y el contenido llegar íntegro.
+     */
+    public void testSegmentedUploadKeepsContentOnTruncatingServer() throws IOException {
+        byte[] content = randomBytes(1024 * 1024);
+        Files.write(local.toPath(), content);
+        uploader.setSegmentedUploads(64 * 1024, 4);
+        assertTrue(uploader.isSegmented(content.length));
+
+        upload("/big.bin", false);
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(new File(server.getHome(), "big.bin").toPath())));
+        assertFalse(uploader.isSegmented(content.length));
+    }
+
+    public void testResumeContinuesFromRemoteSize() throws IOException {
+        byte[] content = randomBytes(300 * 1000);
+        Files.write(local.toPath(), content);
+        try (FileOutputStream partial = new FileOutputStream(new File(server.getHome(), "partial.bin"))) {
+            partial.write(content, 0, 120 * 1000);
+        }
+
+        Transfer progress = new Transfer(local, "upload", content.length);
+        upload("/partial.bin", true, progress);
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(new File(server.getHome(), "partial.bin").toPath())));
+        assertEquals(content.length, progress.getTransferredBytes());
+    }
+
+    /**
+     * Lo que se envía de una pieza queda hasheado en la caché; lo reanudado no, porque no se ha leído entero.
+     */
+    public void testWholeUploadIsHashedWhileSending() throws IOException {
+        byte[] content = randomBytes(200 * 1000);
+        Files.write(local.toPath(), content);
+        ContentHasher hasher = new ContentHasher("SHA-256", 1);
+        uploader.setHasher(hasher);
+        try {
+            upload("/hashed.bin", false);
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest(content);
+            assertTrue(Arrays.equals(expected, hasher.cached(local)));
+
+            Files.write(local.toPath(), randomBytes(250 * 1000));
+            upload("/hashed.bin", true);
+            assertNull(hasher.cached(local));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    private void upload(String ftpPath, boolean resume) throws IOException {
+        upload(ftpPath, resume, null);
+    }
+
+    private void upload(String ftpPath, boolean resume, Transfer progress) throws IOException {
+        FTPClient client = pool.borrow();
+        try {
+            uploader.upload(client, local, ftpPath, resume, progress, TransferPriority.BULK);
+        } finally {
+            pool.release(client);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
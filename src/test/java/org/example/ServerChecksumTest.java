@@ -0,0 +1,60 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ServerChecksumTest extends TestCase {
+
+    /**
+     * Cliente sin conexión que contesta como un servidor con HASH y recuerda el algoritmo elegido por OPTS.
+     */
+    private static class HashServer extends FTPClient {
+        final List<String> commands = new ArrayList<>();
+        String selected = "SHA-1";
+        String reply;
+
+        @Override
+        public boolean hasFeature(String feature) {
+            return feature.equals("HASH");
+        }
+
+        @Override
+        public String[] featureValues(String feature) {
+            return new String[]{"SHA-1*;SHA-256;MD5"};
+        }
+
+        @Override
+        public int sendCommand(String command, String args) {
+            commands.add(command + " " + args);
+            if (command.equals("OPTS")) {
+                selected = args.substring("HASH ".length());
+                reply = "200 " + selected;
+                return 200;
+            }
+            reply = "213 " + selected + " 0-3 abcdef " + args;
+            return 213;
+        }
+
+        @Override
+        public String getReplyString() {
+            return reply + "\r\n";
+        }
+    }
+
+    public void testSessionWithoutOptsIsNotCompared() throws Exception {
+        HashServer first = new HashServer();
+        ServerChecksum checksum = ServerChecksum.detect(first);
+        assertEquals("SHA-256", checksum.getAlgorithm());
+        assertEquals("abcdef", checksum.checksum(first, "/a.txt"));
+
+        // Sesión nueva: el servidor vuelve a su algoritmo por defecto hasta que se prepara
+        HashServer second = new HashServer();
+        assertNull(checksum.checksum(second, "/a.txt"));
+        checksum.prepare(second);
+        assertEquals("OPTS HASH SHA-256", second.commands.get(1));
+        assertEquals("abcdef", checksum.checksum(second, "/a.txt"));
+    }
+}
@@ -0,0 +1,206 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class SincronizadorFTPTest extends TestCase {
+
+    private FtpServerFixture server;
+    private File local;
+    private SincronizadorFTP sync;
+
+    @Override
+    protected void setUp() throws Exception {
+        // Apache FtpServer contesta 450 también cuando el archivo no existe; aquí "gone" recibe el 550 habitual
+        server = new FtpServerFixture(FtpServerFixture.rejecting(450, "locked", "DELE"),
+                FtpServerFixture.rejecting(550, "gone", "DELE"));
+        local = Files.createTempDirectory("synced").toFile();
+        sync = new SincronizadorFTP(local, "localhost", server.getPort(), FtpServerFixture.USER, FtpServerFixture.PASSWORD, 2);
+        sync.setBackupDir(null);
+    }
+
+    /**
+     * Un archivo caducado que el servidor no deja borrar conserva su plazo para reintentarlo; uno que ya no
+     * existe lo pierde igual que uno borrado.
+     */
+    public void testRefusedExpiryKeepsItsLifetime() throws Exception {
+        long lifetime = TimeUnit.HOURS.toMillis(1);
+        for (String name : new String[]{"locked.txt", "gone.txt", "ok.txt"}) {
+            File file = new File(local, name);
+            Files.write(file.toPath(), name.getBytes());
+            sync.upload(file, "owner", lifetime);
+        }
+
+        sync.expireFiles(Arrays.asList("/locked.txt", "/gone.txt", "/ok.txt"));
+        assertTrue(new File(server.getHome(), "locked.txt").exists());
+        assertFalse(new File(server.getHome(), "ok.txt").exists());
+
+        Map<String, Long> lifetimes = new HashMap<>();
+        MetadataJournal journal = new MetadataJournal(local, new HashMap<>(), lifetimes);
+        journal.open();
+        journal.close();
+        assertEquals(Collections.singleton("/locked.txt"), lifetimes.keySet());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sync.stopSync();
+        server.close();
+        FtpServerFixture.deleteTree(local);
+    }
+
+    /**
+     * Un archivo con la misma firma de contenido pero otra fecha sólo necesita corregir la fecha remota, y eso
+     * tiene que esperar a que se ejecute el plan: ni planificar ni un dry run pueden tocar el servidor.
+     */
+    public void testContentMatchIsTouchedOnlyWhenPlanRuns() throws IOException {
+        sync.setContentVerification(true);
+        File file = new File(local, "doc.txt");
+        Files.write(file.toPath(), "same content".getBytes());
+        assertNotNull(sync.syncNow());
+        File remote = new File(server.getHome(), "doc.txt");
+        long uploadedTime = remote.lastModified();
+
+        assertTrue(file.setLastModified(file.lastModified() + TimeUnit.HOURS.toMillis(1)));
+        SyncPlan plan = sync.planPass();
+        assertEquals(1, plan.get(SyncPlan.Type.TOUCH).size());
+        assertTrue(plan.get(SyncPlan.Type.UPLOAD).isEmpty());
+
+        sync.setDryRun(true);
+        sync.syncNow();
+        assertEquals(uploadedTime, remote.lastModified());
+
+        sync.setDryRun(false);
+        SyncPlan applied = sync.syncNow();
+        assertEquals(1, applied.get(SyncPlan.Type.TOUCH).size());
+        assertEquals(file.lastModified() / 1000, remote.lastModified() / 1000);
+        assertTrue(sync.planPass().isEmpty());
+    }
+
+    /**
+     * El plan se calcula por lotes según llega el listado: un directorio con más entradas que un lote tiene que
+     * dar el mismo resultado que uno pequeño, sin subir lo que ya está ni perder lo que sobra.
+     */
+    public void testPlanSpansListingBatches() throws IOException {
+        File remoteBig = new File(server.getHome(), "big");
+        File localBig = new File(local, "big");
+        assertTrue(remoteBig.mkdirs() && localBig.mkdirs());
+        long time = System.currentTimeMillis() / 1000 * 1000 - TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < RemoteSnapshot.PAGE_SIZE + 250; i++) {
+            for (File dir : new File[]{remoteBig, localBig}) {
+                File file = new File(dir, "f" + i + ".txt");
+                Files.write(file.toPath(), ("content " + i).getBytes());
+                assertTrue(file.setLastModified(time));
+            }
+        }
+        Files.write(new File(remoteBig, "stale.txt").toPath(), "old".getBytes());
+        File nested = new File(local, "nested/deep");
+        assertTrue(nested.mkdirs());
+        Files.write(new File(nested, "new.txt").toPath(), "new".getBytes());
+
+        SyncPlan plan = sync.planPass();
+        assertEquals(1, plan.get(SyncPlan.Type.UPLOAD).size());
+        assertEquals("/nested/deep/new.txt", plan.get(SyncPlan.Type.UPLOAD).get(0).getPath());
+        assertEquals(2, plan.get(SyncPlan.Type.MKDIR).size());
+        assertEquals(1, plan.get(SyncPlan.Type.DELETE).size());
+        assertEquals("/big/stale.txt", plan.get(SyncPlan.Type.DELETE).get(0).getPath());
+    }
+
+    /**
+     * Ni la raíz, ni una ruta vacía, ni ".." pueden borrar nada en local ni en el servidor, y una ruta que no
+     * existe en el servidor tampoco se borra en local.
+     */
+    public void testDeleteRejectsUnsafeAndMissingPaths() throws IOException {
+        File keep = new File(local, "keep.txt");
+        Files.write(keep.toPath(), "keep".getBytes());
+        assertNotNull(sync.syncNow());
+        File onlyLocal = new File(local, "only-local.txt");
+        Files.write(onlyLocal.toPath(), "local".getBytes());
+
+        List<BulkDelete.Result> results = sync.delete(Arrays.asList("/", "", "..", "/keep.txt/..", "only-local.txt"));
+        assertEquals(5, results.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(BulkDelete.Status.FAILED, results.get(i).getStatus());
+        }
+        assertEquals(BulkDelete.Status.NOT_FOUND, results.get(4).getStatus());
+        assertTrue(keep.exists());
+        assertTrue(onlyLocal.exists());
+        assertTrue(new File(server.getHome(), "keep.txt").exists());
+
+        results = sync.delete(Collections.singletonList("keep.txt"));
+        assertEquals(BulkDelete.Status.DELETED, results.get(0).getStatus());
+        assertFalse(keep.exists());
+        assertFalse(new File(server.getHome(), "keep.txt").exists());
+    }
+
+    /**
+     * En local sólo se borra lo que el servidor confirmó: un archivo que no deja borrar, y su directorio, siguen
+     * en los dos lados.
+     */
+    public void testDeleteKeepsWhatTheServerRefused() throws IOException {
+        File dir = new File(local, "dir");
+        assertTrue(dir.mkdir());
+        File deleted = new File(dir, "a.txt");
+        File refused = new File(dir, "locked.txt");
+        Files.write(deleted.toPath(), "a".getBytes());
+        Files.write(refused.toPath(), "locked".getBytes());
+        assertNotNull(sync.syncNow());
+
+        List<BulkDelete.Result> results = sync.delete(Collections.singletonList("dir"));
+        assertEquals(BulkDelete.Status.PARTIAL, results.get(0).getStatus());
+        assertEquals(Collections.singletonList("/dir/a.txt"), results.get(0).getDeletedFiles());
+        assertFalse(deleted.exists());
+        assertTrue(refused.exists());
+        assertTrue(new File(server.getHome(), "dir/locked.txt").exists());
+        assertTrue(sync.planPass().isEmpty());
+    }
+
+    /**
+     * Si el archivo cambia mientras se sube, el índice tiene que guardar la firma de lo que se envió: con la de
+     * después, la pasada siguiente lo daría por igual y el servidor se quedaría para siempre con lo anterior.
+     */
+    public void testFileChangedDuringUploadIsUploadedAgain() throws IOException {
+        sync.setContentVerification(true);
+        File file = new File(local, "growing.bin");
+        byte[] first = new byte[1024 * 1024];
+        Arrays.fill(first, (byte) 'a');
+        Files.write(file.toPath(), first);
+        long originalTime = file.lastModified();
+        byte[] second = new byte[2 * 1024 * 1024];
+        Arrays.fill(second, (byte) 'b');
+
+        Transfer progress = new Transfer(file, "upload", first.length) {
+            private boolean modified;
+
+            @Override
+            void addBytes(long bytes) throws InterruptedIOException {
+                super.addBytes(bytes);
+                if (!modified) {
+                    modified = true;
+                    try {
+                        Files.write(file.toPath(), second);
+                        assertTrue(file.setLastModified(originalTime + TimeUnit.HOURS.toMillis(1)));
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+        };
+        sync.upload(file, "user", 0, progress);
+        assertEquals(first.length, new File(server.getHome(), "growing.bin").length());
+
+        SyncPlan plan = sync.planPass();
+        assertEquals(1, plan.get(SyncPlan.Type.UPLOAD).size());
+        assertEquals("/growing.bin", plan.get(SyncPlan.Type.UPLOAD).get(0).getPath());
+    }
+}
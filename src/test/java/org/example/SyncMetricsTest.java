@@ -0,0 +1,97 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+public class SyncMetricsTest extends TestCase {
+
+    public void testCountersAndPhases() {
+        SyncMetrics metrics = new SyncMetrics("counters");
+        metrics.record(SyncMetrics.Phase.UPLOAD, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.error(SyncMetrics.Phase.UPLOAD);
+        metrics.error(SyncMetrics.Phase.DELETE);
+        metrics.uploaded(100);
+        metrics.uploaded(300);
+
+        SyncMetrics.PhaseStats upload = metrics.getPhases().get("upload");
+        assertEquals(1, upload.getCount());
+        assertEquals(1, upload.getErrors());
+        assertTrue(upload.getMaxMillis() >= 20);
+        assertEquals(0, metrics.getPhases().get("scan").getCount());
+        assertEquals(2, metrics.getErrorCount());
+        assertEquals(2, metrics.getFilesUploaded());
+        assertEquals(400, metrics.getBytesUploaded());
+
+        metrics.reset();
+        assertEquals(0, metrics.getPhases().get("upload").getCount());
+        assertEquals(0, metrics.getErrorCount());
+        assertEquals(0, metrics.getBytesUploaded());
+    }
+
+    /**
+     * El ritmo de una pasada cuenta sólo lo subido durante ella.
+     */
+    public void testPassRatesCountOnlyThatPass() throws InterruptedException {
+        SyncMetrics metrics = new SyncMetrics("rates");
+        metrics.uploaded(1000);
+        long[] started = metrics.passStarted();
+        metrics.uploaded(2048);
+        Thread.sleep(50);
+        metrics.passFinished(started);
+
+        assertEquals(1, metrics.getPassCount());
+        assertTrue(metrics.getLastPassDurationMillis() >= 50);
+        double seconds = metrics.getLastPassDurationMillis() / 1000.0;
+        assertTrue(metrics.getLastPassFilesPerSecond() <= 1 / seconds + 1);
+        assertTrue(metrics.getLastPassBytesPerSecond() <= 2048 / seconds + 1);
+        assertTrue(metrics.getLastPassBytesPerSecond() > 0);
+    }
+
+    public void testQueueGaugesAndSummary() {
+        SyncMetrics metrics = new SyncMetrics("gauges");
+        metrics.setQueueGauges(() -> 3, () -> 7);
+        metrics.record(SyncMetrics.Phase.LIST, System.nanoTime());
+        assertEquals(3, metrics.getUploadQueueDepth());
+        assertEquals(7, metrics.getBackupQueueDepth());
+        String summary = metrics.summary();
+        assertTrue(summary, summary.startsWith("Metrics gauges:"));
+        assertTrue(summary, summary.contains("queues=3/7"));
+        assertTrue(summary, summary.contains(" list=1/"));
+        assertFalse(summary, summary.contains(" scan="));
+    }
+
+    public void testRegisterPublishesMXBean() throws Exception {
+        SyncMetrics metrics = new SyncMetrics("jmx test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.example:type=SyncMetrics,name=" + ObjectName.quote("jmx test"));
+        metrics.register();
+        try {
+            metrics.uploaded(10);
+            assertTrue(server.isRegistered(name));
+            assertEquals(10L, server.getAttribute(name, "BytesUploaded"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(100, histogram.getCount());
+        // El límite superior de la cubeta, como mucho el doble del valor real
+        double p50 = histogram.getPercentileMillis(0.5);
+        assertTrue(String.valueOf(p50), p50 >= 1 && p50 <= 2.1);
+        assertEquals(100.0, histogram.getPercentileMillis(1.0), 0.001);
+        assertEquals(100.0, histogram.getMaxMillis(), 0.001);
+        assertEquals(1.99, histogram.getMeanMillis(), 0.001);
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SyncRuntimeTest extends TestCase {
+
+    private static final List<String> OWN_THREADS = Arrays.asList(
+            "expiry-scheduler", "metadata-journal-flusher", "backup-writer", "upload-segment", "ForkJoinPool");
+
+    /**
+     * Una raíz con runtime no arranca hilos propios: caducidades, fsync del diario, copias, hashes y subidas van
+     * en los hilos compartidos, y aun así los plazos vencen y las copias se hacen.
+     */
+    public void testRootRunsOnRuntimeThreads() throws Exception {
+        Set<Thread> before = new HashSet<>(Thread.getAllStackTraces().keySet());
+        File local = Files.createTempDirectory("synced").toFile();
+        File backups = Files.createTempDirectory("backups").toFile();
+        SyncRuntime runtime = new SyncRuntime(2, 2, 2);
+        try (FtpServerFixture server = new FtpServerFixture()) {
+            SincronizadorFTP sync = new SincronizadorFTP(local, "localhost", server.getPort(),
+                    FtpServerFixture.USER, FtpServerFixture.PASSWORD, 2, runtime);
+            try {
+                sync.setBackupDir(backups);
+                sync.setContentVerification(true);
+                sync.setSegmentedUploads(1, 4);
+                File file = new File(local, "short-lived.txt");
+                Files.write(file.toPath(), "expires soon".getBytes());
+                sync.upload(file, "owner", 200);
+                File remote = new File(server.getHome(), "short-lived.txt");
+                assertTrue(remote.exists());
+
+                long deadline = System.currentTimeMillis() + 10000;
+                while (remote.exists() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+                assertFalse(remote.exists());
+                assertTrue(new File(backups, "files/short-lived.txt").exists());
+
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if (before.contains(thread)) {
+                        continue;
+                    }
+                    for (String name : OWN_THREADS) {
+                        assertFalse(thread.getName(), thread.getName().startsWith(name));
+                    }
+                }
+            } finally {
+                sync.stopSync();
+            }
+        } finally {
+            runtime.close();
+            FtpServerFixture.deleteTree(local);
+            FtpServerFixture.deleteTree(backups);
+        }
+    }
+}
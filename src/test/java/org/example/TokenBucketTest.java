@@ -0,0 +1,47 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest extends TestCase {
+
+    private static final long RATE = 100 * 1024;
+
+    public void testUnlimitedNeverWaits() {
+        TokenBucket bucket = new TokenBucket(RateSchedule.UNLIMITED);
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+        assertEquals(0, bucket.getRate());
+    }
+
+    /**
+     * Quien pide más de lo que hay queda en deuda, y el siguiente espera también la deuda del anterior.
+     */
+    public void testDebtIsPaidByWaiting() {
+        TokenBucket bucket = new TokenBucket(RateSchedule.parse("100K"));
+        long first = bucket.reserve(RATE / 2);
+        assertEquals(RATE, bucket.getRate());
+        assertEquals(500, TimeUnit.NANOSECONDS.toMillis(first), 50);
+        long second = bucket.reserve(RATE);
+        assertEquals(1500, TimeUnit.NANOSECONDS.toMillis(second), 50);
+    }
+
+    /**
+     * Sin envíos el cubo se llena, pero sólo hasta un segundo de ráfaga.
+     */
+    public void testBurstIsCappedAtOneSecond() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(RateSchedule.parse("100K"));
+        bucket.reserve(0);
+        Thread.sleep(1500);
+        assertEquals(0, bucket.reserve(RATE));
+        assertEquals(1000, TimeUnit.NANOSECONDS.toMillis(bucket.reserve(RATE)), 50);
+    }
+
+    public void testNewScheduleAppliesAtOnce() {
+        TokenBucket bucket = new TokenBucket(RateSchedule.parse("100K"));
+        assertTrue(bucket.reserve(RATE) > 0);
+        bucket.setSchedule(RateSchedule.UNLIMITED);
+        assertEquals(0, bucket.reserve(RATE));
+        assertEquals(0, bucket.getRate());
+    }
+}
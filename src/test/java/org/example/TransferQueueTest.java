@@ -0,0 +1,93 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransferQueueTest extends TestCase {
+
+    private File local;
+
+    @Override
+    protected void setUp() throws Exception {
+        local = Files.createTempDirectory("queued").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FtpServerFixture.deleteTree(local);
+    }
+
+    /**
+     * Las subidas se hacen por una sola sesión y cada una termina con todos sus bytes contados.
+     */
+    public void testUploadsCompleteWithProgress() throws Exception {
+        try (FtpServerFixture server = new FtpServerFixture(); TransferQueue queue = new TransferQueue()) {
+            File first = write("first.txt", 10_000);
+            File second = write("second.txt", 20_000);
+            List<Transfer> transfers = queue.submitUploads(connection(server.getPort()),
+                    Arrays.asList(first, second), "owner", 0);
+
+            for (Transfer transfer : transfers) {
+                awaitFinished(transfer);
+                assertEquals(transfer.getError(), Transfer.State.DONE, transfer.getState());
+                assertEquals(transfer.getTotalBytes(), transfer.getTransferredBytes());
+            }
+            assertEquals(10_000, new File(server.getHome(), "first.txt").length());
+            assertEquals(20_000, new File(server.getHome(), "second.txt").length());
+        }
+    }
+
+    /**
+     * Una transferencia cancelada antes de su turno no llega a ejecutarse.
+     */
+    public void testCancelledBeforeStartIsSkipped() throws Exception {
+        try (FtpServerFixture server = new FtpServerFixture(); TransferQueue queue = new TransferQueue()) {
+            List<Transfer> transfers = queue.submitUploads(connection(server.getPort()),
+                    Arrays.asList(write("kept.txt", 1000), write("dropped.txt", 1000)), "owner", 0);
+            transfers.get(1).cancel();
+
+            awaitFinished(transfers.get(0));
+            awaitFinished(transfers.get(1));
+            assertEquals(Transfer.State.DONE, transfers.get(0).getState());
+            assertEquals(Transfer.State.CANCELLED, transfers.get(1).getState());
+            assertFalse(new File(server.getHome(), "dropped.txt").exists());
+        }
+    }
+
+    public void testConnectionFailureMarksTransferFailed() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        try (TransferQueue queue = new TransferQueue()) {
+            Transfer transfer = queue.submitUploads(connection(port),
+                    Arrays.asList(write("unreachable.txt", 100)), "owner", 0).get(0);
+            awaitFinished(transfer);
+            assertEquals(Transfer.State.FAILED, transfer.getState());
+            assertNotNull(transfer.getError());
+        }
+    }
+
+    private TransferQueue.Connection connection(int port) {
+        return new TransferQueue.Connection(local, "localhost", port, FtpServerFixture.USER, FtpServerFixture.PASSWORD);
+    }
+
+    private File write(String name, int size) throws Exception {
+        File file = new File(local, name);
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    private static void awaitFinished(Transfer transfer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!transfer.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(transfer.getDescription(), transfer.isFinished());
+    }
+}